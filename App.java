@@ -1,14 +1,15 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.*;
-
-import java.io.File;
-import java.io.FileWriter;
+import java.nio.file.Path;
 import java.sql.Date;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class is where we run our main method from.
@@ -17,151 +18,268 @@ import java.util.Map;
 public final class App
 {
     /**
-     * This method contains the general functionality of how the program processes and completes the deliveries, as well
-     * as creates/writes to the necessary files.
+     * The number of program arguments when a batch of days is given, rather than a single day.
+     */
+    public static final int BATCH_ARGUMENTS = 8;
+    /**
+     * The number of program arguments when a day snapshot is replayed, which is just the snapshot file.
+     */
+    public static final int SNAPSHOT_ARGUMENTS = 1;
+    /**
+     * Whether a snapshot of every day delivered is written (see DaySnapshot), which is set by setting the
+     * ilp.writeSnapshot system property to true.
+     */
+    public static final boolean WRITE_SNAPSHOTS = Boolean.getBoolean("ilp.writeSnapshot");
+    /**
+     * How often (in milliseconds) the database is checked for orders placed while the drones are delivering, which is
+     * set with the ilp.orderPollMillis system property. By default this is 0, which means orders placed later are not
+     * looked for.
+     */
+    public static final long ORDER_POLL_MILLIS = Long.getLong("ilp.orderPollMillis", 0);
+    /**
+     * How long (in milliseconds) new orders are looked for, which is set with the ilp.orderStreamMillis system property.
+     */
+    public static final long ORDER_STREAM_MILLIS = Long.getLong("ilp.orderStreamMillis", 60_000);
+
+    /**
+     * This method reads the program arguments, loads everything that does not change from day to day once, and then
+     * delivers the orders of every day asked for, in parallel.
      *
      * We first store the program arguments with meaningful variable names.
-     * We create every object we need: The main Drone object, Orders object, Menus object and Buildings object.
-     *
-     * We also create a hash map called ordersSortedByValue which is just a hash map that maps order numbers to its value.
-     * This hash map however is sorted so that orders of higher value appear first in the map. (Descending in value).
-     * We also create a hash map called orderNoToDeliverToLongLat which simply maps the order number to its delivery
-     * location as a LongLat object.
+     * The arguments are either a single date, or a start date and an end date for a batch of days (both included).
+     * We create the objects that are shared by every day: Menus object and Buildings object. The W3W locations of the
+     * shops and the pickup locations are resolved once through the W3W cache and reused by every day.
+     * The deliveries and flightpath tables are created once, and every day then writes its rows to them with its date.
      *
-     * We create a list of point objects called landmark points which contains all the landmarks' location as a point object.
-     * We include Appleton Tower as a landmark (way point).
+     * Everything is loaded at the same time rather than one after the other: the menus, the buildings, and (once the
+     * tables exist) the Orders object of every day are each loaded on a thread of their own, and the W3W addresses of the
+     * shops and pickup locations are requested asynchronously as soon as they are known. We only wait for something
+     * when planning needs it, so the time before the first day is planned is about that of the slowest single request.
      *
-     * We create our path list which will contain the list of points that the main drone has travelled to (every move).
-     * At the end of the day, this will be converted to a single line string which we write to a created geoJson file.
-     *
-     * We enter the for loop where our drone will attempt to collect and deliver every order placed starting with the
-     * most valuable ones first, this is a greedy approach.
-     * For each order, we pre-compute the most efficient route using the method getTspShopsToVisitLongLatList.
-     * We then check that we have a sufficient number of moves to make this delivery as well as return back to AT.
-     *      If it does, then we complete the order and delivery, updating the two tables and the path of the drone.
-     *      If it does not, then we repeat this process for the next most valuable order in the list (or hash map in our case).
-     * Once we get to the point where we have delivered every order or we have no battery left to deliver any more, we
-     * return back to AT.
-     * While delivering the orders, we also update the monetary value of orders delivered.
+     * The menus and buildings are put in a planning context which is shared by every day. This has a list of point
+     * objects called landmark points which contains all the landmarks' location as a point object, with Appleton Tower
+     * included as a landmark (way point). Nothing in the planning context can be changed, so the days can all plan with
+     * it at the same time.
      *
+     * With the ilp.metrics system property set to true, performance metrics are collected while the orders are
+     * delivered, and written to metrics.json and metrics.prom once every day is done.
      *
+     * With the ilp.writeSnapshot system property set to true, a snapshot of everything loaded for each day is written to
+     * snapshot-DD-MM-YYYY.bin. Given only the path of such a file, the day is delivered again from the snapshot, without
+     * the web server or the database (see replaySnapshot).
      *
-     * @param args The program arguments of the form [date, month, year, webPort, dbPort].
-     *             The calendar arguments is the day from which we would like to complete those days orders.
+     * @param args The program arguments of the form [date, month, year, webPort, dbPort], or
+     *             [date, month, year, endDate, endMonth, endYear, webPort, dbPort] for a batch of days, or
+     *             [snapshotFile] to replay a day snapshot.
+     *             The calendar arguments is the day (or first and last day) from which we would like to complete those
+     *             days orders.
      *             The webPort is the port the web server is running on.
      *             The dbPort is the port the database is running on.
      */
     public static void main( String[] args )
     {
 
-        Point appleton = Point.fromLngLat(Drone.appletonTower.lng, Drone.appletonTower.lat);
+        if (args.length == SNAPSHOT_ARGUMENTS) {
+            replaySnapshot(Path.of(args[0]));
+            Metrics.writeReports();
+            return;
+        }
 
-        String date = args[0];
-        String month = args[1];
-        String year = args[2];
-        String webPort = args[3];
-        String dbPort = args[4];
-        Date fullDate = Date.valueOf(args[2] + "-" + args[1] + "-" + args[0]);
+        LocalDate startDate = LocalDate.of(Integer.parseInt(args[2]), Integer.parseInt(args[1]), Integer.parseInt(args[0]));
+        LocalDate endDate = startDate;
+        int portArgs = 3;
+        if (args.length == BATCH_ARGUMENTS) {
+            endDate = LocalDate.of(Integer.parseInt(args[5]), Integer.parseInt(args[4]), Integer.parseInt(args[3]));
+            portArgs = 6;
+        }
+        String webPort = args[portArgs];
+        String dbPort = args[portArgs + 1];
 
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = startDate; !day.isAfter(endDate); day = day.plusDays(1)) {
+            days.add(day);
+        }
 
-        Drone drone = new Drone();
-        Orders orders = new Orders(dbPort, fullDate);
-        Menus menu = new Menus(webPort);
-        Buildings buildings = new Buildings(webPort);
+        //Loading is mostly waiting on the web server and the database, so it has its own threads.
+        ExecutorService loader = Executors.newCachedThreadPool();
 
-        Map<String, Integer> ordersSortedByValue = orders.getOrderedValuableOrdersToCostMap(menu);
-        Map<String, LongLat> OrderNoToDeliverToLongLat = orders.getOrderNoToDeliverToLongLat(webPort);
+        CompletableFuture<Menus> menuLoading = CompletableFuture.supplyAsync(() -> {
+            Menus loadedMenu = new Menus(webPort);
+            loadedMenu.resolveShopLocationsAsync();
+            return loadedMenu;
+        }, loader);
+        CompletableFuture<Buildings> buildingsLoading = CompletableFuture.supplyAsync(() -> new Buildings(webPort), loader);
 
-        List<Point> landmarkPoints = Buildings.landmarkPoints;
-        landmarkPoints.add(appleton);
+        CompletableFuture<Void> tablesCreated = CompletableFuture.runAsync(() -> Orders.createTables(dbPort), loader);
+        Map<LocalDate, CompletableFuture<Orders>> ordersLoading = new HashMap<>();
+        for (LocalDate day : days) {
+            ordersLoading.put(day, tablesCreated.thenApplyAsync(created -> {
+                Orders loadedOrders = new Orders(dbPort, Date.valueOf(day));
+                loadedOrders.resolveDeliverToLocationsAsync(webPort);
+                return loadedOrders;
+            }, loader));
+        }
 
-        //We add Appleton Tower to our path since we always start from there.
-        List<Point> path = new ArrayList<>();
-        path.add(Point.fromLngLat(appleton.longitude(), appleton.latitude()));
+        PlanningContext sharedContext = new PlanningContext(menuLoading.join(), buildingsLoading.join());
 
-        //Calculating the total monetary value of orders placed on the given date.
-        double totalMonetaryValuePlaced = 0;
-        double monetaryValue = 0;
-        for (double orderCost : ordersSortedByValue.values()){
-            totalMonetaryValuePlaced += orderCost;
-        }
+        //The days do not depend on each other, so they are delivered at the same time.
+        days.parallelStream().forEach(day -> {
+            Orders orders = ordersLoading.get(day).join();
+            deliverOrders(day, webPort, orders, sharedContext.forOrders(orders, webPort));
+        });
 
-        int counter;
-
-        for (String orderNo : ordersSortedByValue.keySet()){
-
-            Collection<String> itemNames = orders.getItemNamesFromOrder(orderNo);
-            String[] shopsToVisit = menu.shopsArrayFromItems(itemNames);
-            LongLat deliverToLongLat = OrderNoToDeliverToLongLat.get(orderNo);
-            List<LongLat> tspShopsToVisitLongLats = menu.getTspShopsToVisitLongLatList(drone.getPosition(), shopsToVisit, deliverToLongLat, landmarkPoints, buildings);
-
-            //Check if the drone has enough moves to complete the order as well as return back to AT.
-            //If it does have enough moves for this, then we execute the algorithm, update the monetary value and write into the deliveries table.
-            if (drone.sufficientNumberOfMovesForOrder(tspShopsToVisitLongLats, landmarkPoints, buildings)){
-                drone.algorithm(landmarkPoints, tspShopsToVisitLongLats, buildings, path);
-                int costInPenceOfOrder = ordersSortedByValue.get(orderNo);
-                monetaryValue += costInPenceOfOrder;
-                orders.insertIntoDeliveries(orderNo, costInPenceOfOrder);
-                counter = 0;
-                for (LongLat moveFrom : drone.getMovesFrom()){
-                    orders.insertIntoFlightpath(orderNo, moveFrom.lng, moveFrom.lat,
-                            drone.getAnglesOfMoves().get(counter), drone.getMovesTo().get(counter).lng, drone.getMovesTo().get(counter).lat);
-                    counter+=1;
-                }
-                //Since we have completed writing the orders' data into the tables, we can clear them and make them ready
-                //for the next order.
-                drone.setMovesFrom(new ArrayList<>());
-                drone.setMovesTo(new ArrayList<>());
-                drone.setAnglesOfMoves(new ArrayList<>());
-            }
+        loader.shutdown();
+
+        //Written only when the ilp.metrics system property is set.
+        Metrics.writeReports();
+    }
+
+    /**
+     * This method delivers the orders of one day from a day snapshot, with no web server and no database.
+     * Everything the day needs is read from the snapshot (menus, buildings, and the orders with their delivery locations
+     * already resolved), and the day is then delivered in the same way as any other, so the drones fly exactly as they
+     * did on the day the snapshot was written. Nothing is written to the database, but the GeoJson file and the report
+     * of the day are.
+     *
+     * @param file Path of the snapshot file.
+     */
+    private static void replaySnapshot(Path file)
+    {
+
+        DaySnapshot snapshot = DaySnapshot.read(file);
+        Orders orders = snapshot.orders();
+        PlanningContext sharedContext = new PlanningContext(snapshot.menus(), snapshot.buildings());
+        deliverOrders(snapshot.day.toLocalDate(), null, orders,
+                sharedContext.forOrders(orders, snapshot.orderNoToDeliverToLongLat));
+    }
+
+    /**
+     * This method contains the general functionality of how the program processes and completes the deliveries of one
+     * day, as well as creates/writes to the necessary files.
+     *
+     * The Orders object of the day has its own connection to the database (unless it came from a day snapshot).
+     *
+     * The planning context of the day is created from the shared one, with the orders of the day.
+     * This has a hash map called ordersSortedByValue which is just a hash map that maps order numbers to its value.
+     * This hash map however is sorted so that orders of higher value appear first in the map. (Descending in value).
+     * It also has a hash map called orderNoToDeliverToLongLat which simply maps the order number to its delivery
+     * location as a LongLat object.
+     * If snapshots are being written, the snapshot of the day is written from it first.
+     *
+     * The order sequencer chooses the sequence in which every order placed is attempted. By default this starts with the
+     * most valuable ones first, this is a greedy approach.
+     * With the ilp.sequencer system property set to orienteering, the whole day is planned up front instead.
+     *
+     * The fleet of drones (one drone unless the ilp.drones system property is set) then attempts the orders in that sequence.
+     * For each order, a drone pre-computes the most efficient route using the method getTspShopsToVisitLongLatList.
+     * It then checks that it has a sufficient number of moves to make this delivery as well as return back to AT.
+     *      If it does, then it completes the order and delivery, updating the two tables and the path of the drone.
+     *      The rows written to the two tables for the order are committed together as one transaction, tagged with
+     *      the drone's number. They are written on a writer thread of their own, so the drone plans its next order
+     *      while the last one is being written.
+     *      If it does not, then the order is passed on to another drone, and the drone goes on to its next order.
+     * Once a drone has no orders left it can deliver, it returns back to AT.
+     * While delivering the orders, the fleet also adds up the monetary value of orders delivered.
+     *
+     * With the ilp.orderPollMillis system property set, orders placed while the drones are delivering are picked up as
+     * well (see streamNewOrders), and the drones only return back to AT once we stop looking for new orders.
+     *
+     * The path of every drone (every position it has travelled to) is a line string of its own in the geoJson file for
+     * the day, which is written while the drones fly rather than kept in memory.
+     *
+     * @param day The day from which we would like to complete the orders.
+     * @param webPort The port the web server is running on, or null when replaying a day snapshot.
+     * @param orders Orders object of the day.
+     * @param context PlanningContext of the day, with the menus, buildings, landmarks and the orders of the day.
+     */
+    private static void deliverOrders(LocalDate day, String webPort, Orders orders, PlanningContext context)
+    {
+
+        String date = String.format("%02d", day.getDayOfMonth());
+        String month = String.format("%02d", day.getMonthValue());
+        String year = String.valueOf(day.getYear());
+        Date fullDate = Date.valueOf(day);
+
+        if (WRITE_SNAPSHOTS && orders.dbPort != null) {
+            DaySnapshot.write(Path.of("snapshot-" + date + "-" + month + "-" + year + ".bin"), context, orders);
         }
+        Map<String, Integer> ordersSortedByValue = context.ordersSortedByValue;
 
-        //After we have either completed delivering every order, or we have no battery left in the drone to deliver any
-        //more orders, we call this method that returns the drone back to AT.
-        drone.algorithmEnd(landmarkPoints, buildings, path);
+        //Choosing the sequence each drone attempts the orders in, which by default is the most valuable first.
+        OrderSequencer orderSequencer = OrderSequencer.fromSystemProperty(context.landmarkPoints, context.buildings);
+        List<List<String>> droneSequences = orderSequencer.sequenceForDrones(ordersSortedByValue, orderNo ->
+                context.tourOfOrder(Drone.appletonTower, orderNo), Fleet.DEFAULT_DRONE_COUNT);
 
-        //Write to the flightpath table.
-        counter = 0;
-        for (LongLat moveFrom : drone.getMovesFrom()){
-            orders.insertIntoFlightpath(null, moveFrom.lng, moveFrom.lat,
-                    drone.getAnglesOfMoves().get(counter), drone.getMovesTo().get(counter).lng, drone.getMovesTo().get(counter).lat);
-            counter+=1;
+        //Delivering the orders with the fleet of drones, which each return back to AT once they have no battery left to
+        //deliver any more orders (or every order has been delivered).
+        //The path of every drone is written to the geoJson file as it flies.
+        GeoJsonPathWriter pathWriter = new GeoJsonPathWriter(Path.of("drone-" + date + "-" + month + "-" + year + ".geojson"));
+        Fleet fleet = new Fleet(Fleet.DEFAULT_DRONE_COUNT, context, orders, pathWriter);
+        boolean streaming = ORDER_POLL_MILLIS > 0 && orders.dbPort != null;
+        fleet.start(droneSequences, streaming);
+        PlanningContext contextAtEndOfDay = streaming ? streamNewOrders(fleet, orders, context, webPort) : context;
+        fleet.finish();
+        pathWriter.close();
+        double monetaryValue = fleet.getMonetaryValue();
+
+        orders.close();
+
+        //Calculating the total monetary value of orders placed on the given date, including any placed while delivering.
+        double totalMonetaryValuePlaced = 0;
+        for (double orderCost : contextAtEndOfDay.ordersSortedByValue.values()){
+            totalMonetaryValuePlaced += orderCost;
         }
 
         //Calculating the percentage monetary value delivered on the date in question.
+        //The report of the day is printed in one go, so that the reports of days delivered at the same time do not mix.
         double percentageMonetaryValue = (monetaryValue / totalMonetaryValuePlaced) * 100;
-        System.out.println("Total monetary value delivered is " + monetaryValue);
-        System.out.println("Total monetary value placed is " + totalMonetaryValuePlaced);
-        System.out.println("Percentage monetary value is " + percentageMonetaryValue + "%");
-        System.out.println(drone.getMoves() + " Moves made");
-
-        LineString x = LineString.fromLngLats(path);
-        Feature f = Feature.fromGeometry(x);
-        FeatureCollection fc = FeatureCollection.fromFeature(f);
-
-        //Creating the geoJson file that will hold information about the drones flightpath throughout the day.
-        try {
-            File myObj = new File("drone-" + date + "-" + month + "-" + year +".geojson");
-            if (myObj.createNewFile()) {
-                System.out.println("File created: " + myObj.getName());
-
-            } else {
-                System.out.println("GeoJson file " + myObj.getName() + " already exists.");
-            }
-        } catch (java.io.IOException e) {
-            System.err.println("An error occurred.");
-            e.printStackTrace();
+        StringBuilder report = new StringBuilder("Orders of " + fullDate + ":" + System.lineSeparator());
+        report.append("Total monetary value delivered is ").append(monetaryValue).append(System.lineSeparator());
+        report.append("Total monetary value placed is ").append(totalMonetaryValuePlaced).append(System.lineSeparator());
+        report.append("Percentage monetary value is ").append(percentageMonetaryValue).append("%").append(System.lineSeparator());
+        for (int moves : fleet.getMoves()){
+            report.append(moves).append(" Moves made").append(System.lineSeparator());
         }
+        System.out.print(report);
+    }
+
+    /**
+     * This method looks for orders placed while the fleet is delivering, every ORDER_POLL_MILLIS milliseconds for
+     * ORDER_STREAM_MILLIS milliseconds, and hands any it finds to the fleet.
+     * Each time, only the new orders are added to the planning context and to the queues of the drones, which plan
+     * them from wherever they are once they get to them, so a new order costs about as much as any other order rather
+     * than planning the day again.
+     *
+     * @param fleet The fleet of drones delivering the orders of the day.
+     * @param orders Orders object of the day, which looks for the new orders in the database.
+     * @param context PlanningContext of the day before any new orders.
+     * @param webPort The port the web server is running on.
+     * @return PlanningContext of the day with every new order.
+     */
+    private static PlanningContext streamNewOrders(Fleet fleet, Orders orders, PlanningContext context, String webPort)
+    {
+
+        long end = System.currentTimeMillis() + ORDER_STREAM_MILLIS;
 
-        //Writing to the geoJson file
-        try {
-            FileWriter myWriter = new FileWriter("drone-" + date + "-" + month + "-" + year +".geojson");
-            myWriter.write(fc.toJson());
-            myWriter.close();
-            System.out.println("Successfully wrote to the file.");
-        } catch (java.io.IOException e) {
-            System.err.println("An error occurred.");
-            e.printStackTrace();
+        while (System.currentTimeMillis() < end) {
+            try {
+                Thread.sleep(ORDER_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            List<Orders.PlacedOrder> placedOrders = orders.pollNewOrders();
+            if (placedOrders.isEmpty()) {
+                continue;
+            }
+            context = context.withPlacedOrders(placedOrders, webPort);
+            List<String> newOrderNos = new ArrayList<>();
+            for (Orders.PlacedOrder placedOrder : placedOrders) {
+                newOrderNos.add(placedOrder.orderNo);
+            }
+            fleet.addOrders(context, newOrderNos);
         }
+        return context;
     }
 }
@@ -0,0 +1,84 @@
+package uk.ac.ed.inf;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * This class represents a prepared insert statement whose rows are sent to the database in batches.
+ * Instead of executing the statement once per row (one round-trip to the database each time), each row is added to
+ * a batch, and the batch is only executed once it reaches the batch size or when it is flushed.
+ */
+public final class BatchedStatement {
+
+    /**
+     * The prepared statement that rows are added to.
+     */
+    private final PreparedStatement preparedStatement;
+    /**
+     * The number of rows that are held before the batch is executed automatically.
+     */
+    private final int batchSize;
+    /**
+     * The number of rows added to the current batch that have not been executed yet.
+     */
+    private int pendingRows = 0;
+
+    /**
+     * Constructor for class BatchedStatement.
+     *
+     * @param preparedStatement The prepared insert statement that rows are added to.
+     * @param batchSize The number of rows that are held before the batch is executed, must be at least 1.
+     */
+    BatchedStatement(PreparedStatement preparedStatement, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, was " + batchSize);
+        }
+        this.preparedStatement = preparedStatement;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Getter for the prepared statement, so that the parameters of the next row can be set before calling addRow.
+     * @return The prepared statement that rows are added to.
+     */
+    public PreparedStatement getPreparedStatement() {
+        return preparedStatement;
+    }
+
+    /**
+     * Method that adds the row currently set on the prepared statement to the batch.
+     * If the batch has reached the batch size, it is executed.
+     *
+     * @throws SQLException If the row could not be added or the batch could not be executed.
+     */
+    public void addRow() throws SQLException {
+        preparedStatement.addBatch();
+        pendingRows += 1;
+        if (pendingRows >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Method that executes every row in the batch that has not been executed yet.
+     *
+     * @throws SQLException If the batch could not be executed.
+     */
+    public void flush() throws SQLException {
+        if (pendingRows > 0) {
+            pendingRows = 0;
+            preparedStatement.executeBatch();
+        }
+    }
+
+    /**
+     * Method that throws away every row in the batch that has not been executed yet, for example after a failed
+     * transaction has been rolled back.
+     *
+     * @throws SQLException If the batch could not be cleared.
+     */
+    public void clear() throws SQLException {
+        pendingRows = 0;
+        preparedStatement.clearBatch();
+    }
+}
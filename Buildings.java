@@ -7,7 +7,10 @@ import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  *
@@ -16,6 +19,8 @@ import java.util.List;
  * Once a buildings object is called, it should contain all the information needed about the NFZ's and the landmarks.
  * This means that only one buildings object is ever needed if we are working with orders for one date, since it is
  * expected that information on buildings will not change throughout the day.
+ * A buildings object cannot be changed once it is created, so it can be shared by any number of days and drones
+ * planning at the same time.
  *
  */
 public final class Buildings {
@@ -23,81 +28,135 @@ public final class Buildings {
     /**
      * We declare the list of NFZ edges here so we can use it in the checkDirectRoute method below.
      * This list contains the edges of every NFZ polygon as a line2D object.
+     * This belongs to each buildings object, so that buildings loaded more than once never mix, and cannot be changed.
      */
-    public static final List<Line2D> nfzEdges = new ArrayList<>();
+    public final List<Line2D> nfzEdges;
+    /**
+     * The NFZ's as polygon objects, which the edges and the visibility graph are built from, and which cannot be changed.
+     */
+    public final List<Polygon> nfzPolygons;
     /**
      * We declare landmarkPoints here so we can make use of it in the main method.
      * This list contains all the landmarks that we may divert toward at some stage during our deliveries due to NFZ's.
+     * It cannot be changed, so Appleton Tower is added to a copy of it (see PlanningContext) rather than to this list.
      */
-    public static final List<Point> landmarkPoints = new ArrayList<>();
+    public final List<Point> landmarkPoints;
 
     /**
      * Web port is needed to retrieve the information about the buildings from the web server.
+     * This is null if the buildings were not retrieved from the web server.
      */
     public final String webPort;
 
+    /**
+     * Spatial index over the NFZ edges, built once in the constructor, so that checking a route only tests the
+     * edges near it.
+     */
+    private final NfzEdgeIndex nfzEdgeIndex;
+    /**
+     * Visibility graph over the NFZ corners, the landmarks and Appleton Tower, built once in the constructor, which is
+     * used to find the shortest route around the NFZ's.
+     */
+    private final VisibilityGraph visibilityGraph;
+    /**
+     * Cache of the cost of legs flown over these buildings, shared by every dry run so that a leg is only flown once.
+     */
+    private final LegCostCache legCostCache = new LegCostCache(LegCostCache.DEFAULT_CAPACITY);
+    /**
+     * Moves-to-home field over the confinement area, which is only built the first time it is needed, since maps that
+     * are only used to check routes never need it.
+     */
+    private HomeCostField homeCostField;
+
     /**
      * Constructor for class Buildings.
      * Whenever we create a buildings object (only once per day of orders), we:
-     * Get the information from the web server about the NFZ's.
-     * We get the polygons that are the NFZ's and add them to an arrat as well as the
-     * coordinates (corner points) of these NFZ's and create an array to store these in.
-     * We also create an array that stores the edges of the NFZ's with respect to their polygons, to make checking
-     * for line intersection with each of these edges possible.
-     *
-     * We also get the information about the landmarks from the web server.
-     * We store this information as a list of point object from which we can get its longitude and latitude coordinates.
+     * Get the information from the web server about the NFZ's, which are polygons.
+     * We also get the information about the landmarks from the web server, which are points.
+     * Both are requested at the same time, so we only wait as long as the slower of the two.
+     * We then build everything we need from these with the constructors below.
      *
      * @param webPort The port the server is running on.
      */
     Buildings(String webPort) {
+        this(webPort, getGeoJson(webPort, "no-fly-zones.geojson", "landmarks.geojson"));
+    }
 
-        this.webPort = webPort;
-
-        HttpResponse<String> response = null;
-        final List<Polygon> nfzPolygons = new ArrayList<>();
-        final List<List<List<Point>>> nfzCornerPoints = new ArrayList<>();
-
-        //Accessing information about the NFZ's from the web server.
-        try {
-
-            HttpRequest request = HttpRequest.newBuilder() //HTTP GET request.
-                    .uri(URI.create("http://localhost:" + webPort + "/buildings/no-fly-zones.geojson"))
-                    .build();
-            //We use the same client as the one created in the Menus class to avoid creating many clients.
-            response = Menus.client.send(request, HttpResponse.BodyHandlers.ofString());
-
-        } catch (IllegalArgumentException e) {
+    /**
+     * Constructor for class Buildings from the GeoJson files of the NFZ's and landmarks from the web server.
+     *
+     * @param webPort The port the server is running on.
+     * @param geoJson The contents of the NFZ's GeoJson file and the landmarks' GeoJson file, in that order.
+     */
+    private Buildings(String webPort, String[] geoJson) {
+        this(webPort, getNfzPolygons(geoJson[0]), getLandmarks(geoJson[1]));
+    }
 
-            System.err.println("IllegalArgumentException - URL syntactically incorrect");
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Constructor for class Buildings from NFZ's and landmarks that we already have, rather than ones from the web server.
+     * This lets us create buildings for maps that are not on the web server, such as the synthetic maps used for benchmarks.
+     *
+     * @param nfzPolygons List of the NFZ's as polygon objects.
+     * @param landmarks List of the landmarks as point objects.
+     */
+    Buildings(List<Polygon> nfzPolygons, List<Point> landmarks) {
+        this(null, nfzPolygons, landmarks);
+    }
 
-        } catch (java.net.ConnectException e) {
+    /**
+     * Constructor for class Buildings that does the work of both constructors above.
+     * We get the coordinates (corner points) of the NFZ polygons and create an array to store these in.
+     * We also create an array that stores the edges of the NFZ's with respect to their polygons, to make checking
+     * for line intersection with each of these edges possible.
+     * These edges are then put into a spatial index so that a route is only checked against the edges near it.
+     *
+     * We store the landmarks as a list of point object from which we can get its longitude and latitude coordinates.
+     *
+     * Once we have both, we build the visibility graph over the NFZ corners, the landmarks and Appleton Tower.
+     *
+     * @param webPort The port the server is running on, or null if the buildings did not come from the web server.
+     * @param nfzPolygons List of the NFZ's as polygon objects.
+     * @param landmarks List of the landmarks as point objects.
+     */
+    private Buildings(String webPort, List<Polygon> nfzPolygons, List<Point> landmarks) {
 
-            System.err.println("Fatal error: unable to connect to localhost at port " + webPort + ".");
-            e.printStackTrace();
-            System.exit(1);
+        this.webPort = webPort;
+        this.nfzPolygons = List.copyOf(nfzPolygons);
 
-        } catch (Exception e) {
+        final List<List<List<Point>>> nfzCornerPoints = new ArrayList<>();
 
-            System.err.println("An exception has occurred");
-            e.printStackTrace();
+        for (Polygon p : nfzPolygons) {
+            nfzCornerPoints.add(p.coordinates());
+        }
 
+        //Populating the list of NFZ edges which helps for checking line intersection.
+        final List<Line2D> edges = new ArrayList<>();
+        for (List<List<Point>> PolygonsCorners : nfzCornerPoints) {
+            for (List<Point> PolygonCorners : PolygonsCorners) {
+                for (int i = 0; i < PolygonCorners.size() - 1; i++) {
+                    edges.add(new Line2D.Double(PolygonCorners.get(i).longitude(), PolygonCorners.get(i).latitude(),
+                            PolygonCorners.get(i + 1).longitude(), PolygonCorners.get(i + 1).latitude()));
+                }
+            }
         }
+        nfzEdges = Collections.unmodifiableList(edges);
+        nfzEdgeIndex = new NfzEdgeIndex(nfzEdges);
 
-        String NfzGeoJson = null;
+        landmarkPoints = List.copyOf(landmarks);
 
+        visibilityGraph = new VisibilityGraph(nfzPolygons, landmarkPoints, nfzEdgeIndex);
+    }
 
-        assert response != null;
-        if (response.statusCode() == Menus.SUCCESSFUL_RESPONSE_CODE) {
-            NfzGeoJson = response.body();
-        } else {
-            System.err.println("Status code is not 200.");
-            System.exit(1);
-        }
+    /**
+     * Method that gets the NFZ's from the NFZ's GeoJson file.
+     * @param geoJson The contents of the NFZ's GeoJson file from the web server.
+     * @return List of the NFZ's as polygon objects.
+     */
+    private static List<Polygon> getNfzPolygons(String geoJson) {
+
+        final List<Polygon> nfzPolygons = new ArrayList<>();
 
-        FeatureCollection fc = FeatureCollection.fromJson(NfzGeoJson);
+        FeatureCollection fc = FeatureCollection.fromJson(geoJson);
         List<Feature> featureObjects = fc.features();
 
         assert featureObjects != null;
@@ -105,29 +164,51 @@ public final class Buildings {
             //no fly zones will only consist of polygons
             nfzPolygons.add((Polygon) f.geometry());
         }
+        return nfzPolygons;
+    }
 
-        for (Polygon p : nfzPolygons) {
-            nfzCornerPoints.add(p.coordinates());
-        }
+    /**
+     * Method that gets the landmarks from the landmarks' GeoJson file.
+     * @param geoJson The contents of the landmarks' GeoJson file from the web server.
+     * @return List of the landmarks as point objects.
+     */
+    private static List<Point> getLandmarks(String geoJson) {
 
-        //Populating the list of NFZ edges which helps for checking line intersection.
-        for (List<List<Point>> PolygonsCorners : nfzCornerPoints) {
-            for (List<Point> PolygonCorners : PolygonsCorners) {
-                for (int i = 0; i < PolygonCorners.size() - 1; i++) {
-                    nfzEdges.add(new Line2D.Double(PolygonCorners.get(i).longitude(), PolygonCorners.get(i).latitude(),
-                            PolygonCorners.get(i + 1).longitude(), PolygonCorners.get(i + 1).latitude()));
-                }
-            }
+        final List<Point> landmarks = new ArrayList<>();
+
+        FeatureCollection fc2 = FeatureCollection.fromJson(geoJson);
+        List<Feature> featureObjects2 = fc2.features();
+
+        assert featureObjects2 != null;
+        for (Feature f : featureObjects2) {
+            //Landmarks will consist only of Points.
+            landmarks.add((Point) f.geometry());
         }
+        return landmarks;
+    }
 
+    /**
+     * Method that gets GeoJson files from the buildings folder of the web server.
+     * Every file is requested asynchronously at the same time, and we then wait for all of them.
+     * @param webPort The port the server is running on.
+     * @param fileNames The names of the GeoJson files in the buildings folder.
+     * @return The contents of the GeoJson files as strings, in the same order as the file names.
+     */
+    private static String[] getGeoJson(String webPort, String... fileNames) {
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
 
-        //Accessing information about the landmarks from the web server.
         try {
 
-            HttpRequest request = HttpRequest.newBuilder() //HTTP GET request.
-                    .uri(URI.create("http://localhost:" + webPort + "/buildings/landmarks.geojson"))
-                    .build();
-            response = Menus.client.send(request, HttpResponse.BodyHandlers.ofString());
+            for (String fileName : fileNames) {
+                HttpRequest request = HttpRequest.newBuilder() //HTTP GET request.
+                        .uri(URI.create("http://localhost:" + webPort + "/buildings/" + fileName))
+                        .build();
+                //We use the same client as the one created in the Menus class to avoid creating many clients.
+                long requestStart = Metrics.startTimer();
+                responses.add(Menus.client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                        .whenComplete((response, e) -> Metrics.HTTP_BUILDINGS.recordSince(requestStart)));
+            }
 
         } catch (IllegalArgumentException e) {
 
@@ -135,43 +216,46 @@ public final class Buildings {
             e.printStackTrace();
             System.exit(1);
 
-        } catch (java.net.ConnectException e) {
+        }
 
-            System.err.println("Fatal error: unable to connect to localhost at port " + webPort + ".");
-            e.printStackTrace();
-            System.exit(1);
+        String[] geoJson = new String[fileNames.length];
 
-        } catch (Exception e) {
+        for (int i = 0; i < fileNames.length; i++) {
 
-            System.err.println("An exception has occurred");
-            e.printStackTrace();
+            HttpResponse<String> response = null;
 
-        }
+            try {
 
-        String LandmarksGeoJson = null;
+                response = responses.get(i).join();
 
-        if (response.statusCode() == Menus.SUCCESSFUL_RESPONSE_CODE) {
-            LandmarksGeoJson = response.body();
-        } else {
-            System.err.println("Status code is not 200.");
-            System.exit(1);
-        }
+            } catch (CompletionException e) {
 
-        FeatureCollection fc2 = FeatureCollection.fromJson(LandmarksGeoJson);
-        List<Feature> featureObjects2 = fc2.features();
+                if (e.getCause() instanceof java.net.ConnectException) {
+                    System.err.println("Fatal error: unable to connect to localhost at port " + webPort + ".");
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+                System.err.println("An exception has occurred");
+                e.printStackTrace();
 
-        assert featureObjects2 != null;
-        for (Feature f : featureObjects2) {
-            //Landmarks will consist only of Points.
-            landmarkPoints.add((Point) f.geometry());
+            }
+
+            assert response != null;
+            if (response.statusCode() == Menus.SUCCESSFUL_RESPONSE_CODE) {
+                geoJson[i] = response.body();
+            } else {
+                System.err.println("Status code is not 200.");
+                System.exit(1);
+            }
         }
+        return geoJson;
     }
 
     /**
      *
      * Method that checks whether a direct route (straight line) between the positions of two Longlat objects intersect a NFZ.
-     * It does the required checks by iterating through every edge (with respect to its polygon) of each polygon
-     * of the NFZ's and checking whether the direct route intersects at any point with an edge in NFZ.
+     * It does the required checks by looking up the NFZ edges (with respect to its polygon) near the direct route in the
+     * spatial index and checking whether the direct route intersects at any point with one of these edges.
      *
      * @param start Starting LongLat object from which we would like to travel from.
      * @param destination Ending LongLat object to which we would like to travel to.
@@ -182,17 +266,53 @@ public final class Buildings {
      * with the angleToDodgePotentialNfz method.
      */
     public final boolean checkDirectRoute(LongLat start, LongLat destination){
+        return checkDirectRoute(start.lng, start.lat, destination.lng, destination.lat);
+    }
+
+    /**
+     *
+     * Method that checks whether a direct route (straight line) between two positions intersects a NFZ, in the same
+     * way as the method above, without needing LongLat objects.
+     * This is used for checking each move of the drone, so that no objects are created per move.
+     *
+     * @param startLng Longitude of the position we would like to travel from.
+     * @param startLat Latitude of the position we would like to travel from.
+     * @param destinationLng Longitude of the position we would like to travel to.
+     * @param destinationLat Latitude of the position we would like to travel to.
+     * @return Boolean value true if the straight line between the two positions does not intersect with any NFZ.
+     */
+    public final boolean checkDirectRoute(double startLng, double startLat, double destinationLng, double destinationLat){
+        if (Metrics.ENABLED) {
+            Metrics.DIRECT_ROUTE_CHECKS.increment();
+        }
+        return !nfzEdgeIndex.intersectsAnyEdge(startLng, startLat, destinationLng, destinationLat);
+    }
 
-        Line2D lineToDest = new Line2D.Double(start.lng, start.lat, destination.lng, destination.lat);
-        boolean directRoute = true;
+    /**
+     * Getter for the visibility graph around the NFZ's.
+     * @return VisibilityGraph object built from the NFZ's and landmarks of these buildings.
+     */
+    public final VisibilityGraph getVisibilityGraph(){
+        return visibilityGraph;
+    }
 
-        for (Line2D edge : nfzEdges){
-            if (edge.intersectsLine(lineToDest)){
-                directRoute = false;
-                break;
-            }
+    /**
+     * Getter for the cache of leg costs flown over these buildings.
+     * @return LegCostCache object shared by every drone flying over these buildings.
+     */
+    public final LegCostCache getLegCostCache(){
+        return legCostCache;
+    }
+
+    /**
+     * Getter for the moves-to-home field over these buildings, which is built the first time it is asked for.
+     * @return HomeCostField object shared by every drone flying over these buildings.
+     */
+    public final synchronized HomeCostField getHomeCostField(){
+        if (homeCostField == null) {
+            homeCostField = new HomeCostField(nfzPolygons, nfzEdges, nfzEdgeIndex);
         }
-        return directRoute;
+        return homeCostField;
     }
 
 }
@@ -0,0 +1,323 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * This class represents a snapshot of everything that is loaded to deliver the orders of one day: the shops with their
+ * menus and resolved locations, the NFZ's and landmarks, and the orders of the day with their items and resolved
+ * delivery locations.
+ * A snapshot is written to a binary file once the day has been loaded from the web server and the database as usual,
+ * and it can then be read back to deliver the same day again without either of them (see App), which takes
+ * milliseconds and gives exactly the same inputs, down to the last bit of every coordinate.
+ *
+ * The file is a sequence of big-endian values, in this order:
+ *      The magic number and the version of the format, then the day (as a number of days since 1970-01-01).
+ *      The shops: their number, then for each its name, W3W address, longitude, latitude, and number of items followed
+ *      by the name and price in pence of each item.
+ *      The NFZ's: their number, then for each the number of rings, and for each ring its number of points followed by
+ *      the longitude and latitude of each point.
+ *      The landmarks: their number, then the longitude and latitude of each.
+ *      The orders: their number, then for each its order number, W3W delivery address, delivery longitude and latitude,
+ *      and number of items followed by the name of each item.
+ * Every string is written as its length in bytes followed by its UTF-8 bytes.
+ * The file is read through a memory-mapped buffer, so it is read straight from the page cache without any copying or
+ * parsing beyond the values themselves.
+ *
+ */
+final class DaySnapshot {
+
+    /**
+     * The first 4 bytes of every snapshot file ("ILPS"), so that other files are not mistaken for one.
+     */
+    public static final int MAGIC = 0x494C5053;
+    /**
+     * The version of the format, which is changed whenever the format is.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The day of the orders.
+     */
+    public final Date day;
+    /**
+     * Every shop with its name, W3W address and menu, which cannot be changed.
+     */
+    public final List<ShopDetails> shops;
+    /**
+     * Hash map of the name of every shop to its location, which cannot be changed.
+     */
+    public final Map<String, LongLat> shopLocations;
+    /**
+     * The NFZ's as polygon objects, which cannot be changed.
+     */
+    public final List<Polygon> nfzPolygons;
+    /**
+     * The landmarks as point objects, which cannot be changed.
+     */
+    public final List<Point> landmarks;
+    /**
+     * The order numbers of the day, in the order they were read from the database, which cannot be changed.
+     */
+    public final List<String> orderNos;
+    /**
+     * Hash map of every order number to its W3W delivery address, which cannot be changed.
+     */
+    public final Map<String, String> orderNoToDeliverTo;
+    /**
+     * Hash map of every order number to its delivery location, which cannot be changed.
+     */
+    public final Map<String, LongLat> orderNoToDeliverToLongLat;
+    /**
+     * Hash map of every order number to the names of the items in the order, which cannot be changed.
+     */
+    public final Map<String, List<String>> orderNoToItems;
+
+    private DaySnapshot(Date day, List<ShopDetails> shops, Map<String, LongLat> shopLocations, List<Polygon> nfzPolygons,
+                        List<Point> landmarks, List<String> orderNos, Map<String, String> orderNoToDeliverTo,
+                        Map<String, LongLat> orderNoToDeliverToLongLat, Map<String, List<String>> orderNoToItems) {
+        this.day = day;
+        this.shops = Collections.unmodifiableList(shops);
+        this.shopLocations = Collections.unmodifiableMap(shopLocations);
+        this.nfzPolygons = Collections.unmodifiableList(nfzPolygons);
+        this.landmarks = Collections.unmodifiableList(landmarks);
+        this.orderNos = Collections.unmodifiableList(orderNos);
+        this.orderNoToDeliverTo = Collections.unmodifiableMap(orderNoToDeliverTo);
+        this.orderNoToDeliverToLongLat = Collections.unmodifiableMap(orderNoToDeliverToLongLat);
+        this.orderNoToItems = Collections.unmodifiableMap(orderNoToItems);
+    }
+
+    /**
+     * Method that creates the menus of the snapshot, with the shops' locations already resolved.
+     * @return Menus object which does not need the web server.
+     */
+    public Menus menus() {
+        return new Menus(shops, shopLocations);
+    }
+
+    /**
+     * Method that creates the buildings of the snapshot.
+     * @return Buildings object which does not need the web server.
+     */
+    public Buildings buildings() {
+        return new Buildings(nfzPolygons, landmarks);
+    }
+
+    /**
+     * Method that creates the orders of the snapshot.
+     * @return Orders object which does not have a connection to the database, so nothing it delivers is written to it.
+     */
+    public Orders orders() {
+        return new Orders(day, orderNos, orderNoToDeliverTo, orderNoToItems);
+    }
+
+    /**
+     *
+     * Method that writes a snapshot of one day to a file, from the planning context and orders object of the day once
+     * they have been loaded as usual. Any file already there is replaced.
+     * The menus are written shop by shop, with the items of each shop worked out from the hash maps of the menus.
+     * If the snapshot cannot be written, this is reported and the day carries on without it.
+     *
+     * @param file Path of the snapshot file.
+     * @param context PlanningContext of the day, with the menus, buildings and delivery locations.
+     * @param orders Orders object of the day.
+     */
+    public static void write(Path file, PlanningContext context, Orders orders) {
+
+        Menus menu = context.menu;
+        Map<String, List<String>> shopToItems = new LinkedHashMap<>();
+        for (String shop : menu.shopToWords.keySet()) {
+            shopToItems.put(shop, new ArrayList<>());
+        }
+        for (Map.Entry<String, String> itemAndShop : menu.itemToShop.entrySet()) {
+            shopToItems.get(itemAndShop.getValue()).add(itemAndShop.getKey());
+        }
+        Map<String, LongLat> shopLocations = menu.getShopsToLongLat();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(orders.fullDate.toLocalDate().toEpochDay());
+
+            out.writeInt(shopToItems.size());
+            for (Map.Entry<String, List<String>> shopAndItems : shopToItems.entrySet()) {
+                String shop = shopAndItems.getKey();
+                writeString(out, shop);
+                writeString(out, String.join(".", menu.shopToWords.get(shop)));
+                writeLongLat(out, shopLocations.get(shop));
+                out.writeInt(shopAndItems.getValue().size());
+                for (String item : shopAndItems.getValue()) {
+                    writeString(out, item);
+                    out.writeInt(menu.itemToPrice.get(item));
+                }
+            }
+
+            List<Polygon> nfzPolygons = context.buildings.nfzPolygons;
+            out.writeInt(nfzPolygons.size());
+            for (Polygon polygon : nfzPolygons) {
+                out.writeInt(polygon.coordinates().size());
+                for (List<Point> ring : polygon.coordinates()) {
+                    writePoints(out, ring);
+                }
+            }
+
+            writePoints(out, context.buildings.landmarkPoints);
+
+            out.writeInt(orders.orderNoList.size());
+            for (String orderNo : orders.orderNoList) {
+                writeString(out, orderNo);
+                writeString(out, orders.orderNoDeliverToMap.get(orderNo));
+                writeLongLat(out, context.orderNoToDeliverToLongLat.get(orderNo));
+                List<String> items = new ArrayList<>(orders.getItemNamesFromOrder(orderNo));
+                out.writeInt(items.size());
+                for (String item : items) {
+                    writeString(out, item);
+                }
+            }
+
+        } catch (IOException e) {
+            System.err.println("Unable to write day snapshot " + file + ".");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     *
+     * Method that reads a snapshot of one day from a file written by the write method.
+     * The file is mapped into memory and read value by value from the mapped buffer.
+     * If the file cannot be read, or is not a snapshot of this version, there is nothing to deliver, so the program ends.
+     *
+     * @param file Path of the snapshot file.
+     * @return DaySnapshot with everything needed to deliver the orders of the day.
+     */
+    public static DaySnapshot read(Path file) {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.err.println("Fatal error: " + file + " is not a day snapshot of version " + VERSION + ".");
+                System.exit(1);
+            }
+            Date day = Date.valueOf(LocalDate.ofEpochDay(in.getLong()));
+
+            int shopCount = in.getInt();
+            List<ShopDetails> shops = new ArrayList<>(shopCount);
+            Map<String, LongLat> shopLocations = new HashMap<>();
+            for (int i = 0; i < shopCount; i++) {
+                ShopDetails shop = new ShopDetails();
+                shop.name = readString(in);
+                shop.location = readString(in);
+                shopLocations.put(shop.name, readLongLat(in));
+                int itemCount = in.getInt();
+                shop.menu = new ArrayList<>(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    ItemDetails item = new ItemDetails();
+                    item.item = readString(in);
+                    item.pence = in.getInt();
+                    shop.menu.add(item);
+                }
+                shops.add(shop);
+            }
+
+            int polygonCount = in.getInt();
+            List<Polygon> nfzPolygons = new ArrayList<>(polygonCount);
+            for (int i = 0; i < polygonCount; i++) {
+                int ringCount = in.getInt();
+                List<List<Point>> rings = new ArrayList<>(ringCount);
+                for (int j = 0; j < ringCount; j++) {
+                    rings.add(readPoints(in));
+                }
+                nfzPolygons.add(Polygon.fromLngLats(rings));
+            }
+
+            List<Point> landmarks = readPoints(in);
+
+            int orderCount = in.getInt();
+            List<String> orderNos = new ArrayList<>(orderCount);
+            Map<String, String> orderNoToDeliverTo = new HashMap<>();
+            Map<String, LongLat> orderNoToDeliverToLongLat = new HashMap<>();
+            Map<String, List<String>> orderNoToItems = new HashMap<>();
+            for (int i = 0; i < orderCount; i++) {
+                String orderNo = readString(in);
+                orderNos.add(orderNo);
+                orderNoToDeliverTo.put(orderNo, readString(in));
+                orderNoToDeliverToLongLat.put(orderNo, readLongLat(in));
+                int itemCount = in.getInt();
+                List<String> items = new ArrayList<>(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    items.add(readString(in));
+                }
+                orderNoToItems.put(orderNo, Collections.unmodifiableList(items));
+            }
+
+            return new DaySnapshot(day, shops, shopLocations, nfzPolygons, landmarks, orderNos, orderNoToDeliverTo,
+                    orderNoToDeliverToLongLat, orderNoToItems);
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Fatal error: unable to read day snapshot " + file + ".");
+            e.printStackTrace();
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLongLat(DataOutputStream out, LongLat position) throws IOException {
+        out.writeDouble(position.lng);
+        out.writeDouble(position.lat);
+    }
+
+    private static LongLat readLongLat(ByteBuffer in) {
+        return new LongLat(in.getDouble(), in.getDouble());
+    }
+
+    private static void writePoints(DataOutputStream out, List<Point> points) throws IOException {
+        out.writeInt(points.size());
+        for (Point point : points) {
+            out.writeDouble(point.longitude());
+            out.writeDouble(point.latitude());
+        }
+    }
+
+    private static List<Point> readPoints(ByteBuffer in) {
+        int count = in.getInt();
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(Point.fromLngLat(in.getDouble(), in.getDouble()));
+        }
+        return points;
+    }
+}
@@ -2,13 +2,15 @@ package uk.ac.ed.inf;
 
 import com.mapbox.geojson.Point;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * This class represents a drone that makes deliveries throughout the day.
  * The drone has 3 main attributes that we are mainly interested in: position, battery and moves.
  * We also have other attributes that will hold important information to write to the flightpath table.
+ * A drone can also be a dry-run drone, which is only used to plan a route and find out how many moves it takes: it takes
+ * the moves of legs that have been flown before from the leg cost cache instead of working them out again.
+ * An order is planned once by a dry-run drone (see planOrder), and the main drone then makes the planned moves.
  */
 public final class Drone {
 
@@ -17,58 +19,124 @@ public final class Drone {
      */
     public static final LongLat appletonTower = new LongLat(-3.186874, 55.944494);
 
+    /**
+     * The most waypoints the drone flies to when getting around the NFZ's on the way to one destination.
+     */
+    public static final int MAX_REROUTES = 50;
+    /**
+     * The battery the drone starts the day with, which is the most moves it can make in a day.
+     */
+    public static final int MAX_BATTERY = 1500;
+    /**
+     * The battery a dry-run drone starts with, which is one move more than the main drone can ever have.
+     * A dry run stops when its battery runs out, so this way running out always means the route takes more moves than
+     * the main drone has, and a route that takes exactly the battery of the main drone is still flown to the end.
+     */
+    public static final int DRY_RUN_BATTERY = MAX_BATTERY + 1;
+    /**
+     * Whether each leg is planned with the A* search of the LatticePlanner class, which is set by setting the system
+     * property ilp.planner to "astar". Otherwise (and for any leg the search gives up on) the drone steers toward the
+     * destination as it always has.
+     */
+    public static final boolean LATTICE_PLANNER = System.getProperty("ilp.planner", "greedy").equals("astar");
+
     /**
      * Our main drone will start from Appleton Tower each day.
+     * The position is kept as primitive coordinates which are updated in place on every move, so that flying does
+     * not create any objects.
      */
-    private LongLat position = appletonTower;
+    private double lng = appletonTower.lng;
+    private double lat = appletonTower.lat;
     /**
      * Our main drone will start with 1500 battery.
      */
-    private int battery = 1500;
+    private int battery = MAX_BATTERY;
     /**
      * Our main drone will start with 0 moves made.
      */
     private int moves = 0;
 
     /**
-     * List of LongLats that holds the list of positions a drone has moved from throughout completing an order.
-     * This lists content is required to write to the flightpath table, precisely, the fromLongitude and fromLatitude column.
+     * Log of every move the drone has made throughout completing an order: the positions it has moved from and to, and
+     * the angle of each move.
+     * This logs content is required to write to the flightpath table and the GeoJson file.
+     * The flight log of a dry-run drone is what its flight plan is made from.
+     */
+    private FlightLog flightLog;
+
+    /**
+     * Whether this drone is a dry-run drone, used only to count the moves of a route.
+     */
+    private final boolean dryRun;
+
+    /**
+     * Line string of the GeoJson file that every position of the drone is written to as it moves, if there is one.
      */
-    private List<LongLat> movesFrom = new ArrayList<>();
+    private GeoJsonPathWriter.LineStringWriter pathWriter;
+
     /**
-     * List of LongLats that holds the list of positions a drone has moved to throughout completing an order.
-     * This lists content is required to write to the flightpath table, precisely, the toLongitude and toLatitude column.
+     * Constructor for class Drone.
+     * Creates our main drone, which starts at Appleton Tower and records every move it makes.
      */
-    private List<LongLat> movesTo = new ArrayList<>();
+    Drone(){
+        this.dryRun = false;
+        this.flightLog = new FlightLog(appletonTower);
+    }
+
     /**
-     * List of angles the drone has moved toward throughout completing an order.
-     * This lists content is required to write to the flightpath table, precisely, the angle column.
+     * Constructor for class Drone that creates a drone starting from a given position.
+     * @param start LongLat object of the position the drone starts from.
+     * @param dryRun Whether the drone is a dry-run drone.
      */
-    private List<Integer> anglesOfMoves = new ArrayList<>();
+    private Drone(LongLat start, boolean dryRun){
+        this.lng = start.lng;
+        this.lat = start.lat;
+        this.battery = dryRun ? DRY_RUN_BATTERY : MAX_BATTERY;
+        this.dryRun = dryRun;
+        this.flightLog = new FlightLog(start);
+    }
+
+    /**
+     * Method that creates a dry-run drone, which we use to count how many moves a route takes without affecting our
+     * main drone.
+     * It starts with a full battery (see DRY_RUN_BATTERY) and no moves, so its moves after flying a route are the cost
+     * of that route.
+     *
+     * @param start LongLat object of the position the dry run starts from.
+     * @return Dry-run Drone object at the given position.
+     */
+    static Drone dryRun(LongLat start){
+        if (Metrics.ENABLED) {
+            Metrics.DRY_RUNS.increment();
+        }
+        return new Drone(start, true);
+    }
 
 
     /**
      *
      * Method that makes the drone fly toward a given angle.
      * It will move 0.00015 towards the angle.
-     * The position of the drone is updated using the nexPosition method from LongLat class.
+     * The position of the drone is updated in place using the precomputed moves of the MotionKernel class.
      * Battery goes down 1 after one move.
      * Our moves counter will go up 1.
-     * We also add the angle of travel in a list of angles that is added to the flightpath tables.
-     * We also add the position of the drone to a list before we flew to the next position, which is also for the flightpath table.
-     * We also add the position of the drone to a list after we fly to the next position, which is also for the flightpath table.
-     * These lists gets reset after each order is complete and added to the tables in the db.
+     * We also add the move (its angle and the position of the drone after the move) to the flight log, which is for
+     * the flightpath table.
+     * The flight log gets reset after each order is complete and added to the tables in the db.
+     * The new position is also written straight to the drone's path in the GeoJson file, if it has one.
      *
      * @param angle Integer angle in degrees is the direction which we would like to fly toward where we follow the convention that
      *              0 degrees is east and 90 is north, etc...
      */
     public void fly(int angle){
-        movesFrom.add(position);
-        position = position.nextPosition(angle);
+        lng += MotionKernel.lngDelta(angle);
+        lat += MotionKernel.latDelta(angle);
         battery -= 1;
         moves += 1;
-        movesTo.add(position);
-        anglesOfMoves.add(angle);
+        flightLog.add(angle, lng, lat);
+        if (pathWriter != null){
+            pathWriter.add(lng, lat);
+        }
     }
 
     /**
@@ -77,17 +145,19 @@ public final class Drone {
      * The position after a hover move will be unchanged.
      * The battery will go down by 1.
      * Our moves counter will go up by 1.
-     * We add the same position to both movesFrom list and movesTo list.
-     * Since we are hovering, the angle is the junk value of -999, which is added to the list angleOfMoves.
+     * We add the move to the flight log, with the same position before and after it.
+     * Since we are hovering, the angle is the junk value of -999.
+     * The position is also written to the drone's path in the GeoJson file, if it has one.
      *
      */
     public void hover()
     {
-        movesFrom.add(position);
         battery -= 1;
         moves += 1;
-        movesTo.add(position);
-        anglesOfMoves.add(LongLat.JUNK_VALUE);
+        flightLog.add(LongLat.JUNK_VALUE, lng, lat);
+        if (pathWriter != null){
+            pathWriter.add(lng, lat);
+        }
     }
 
     /**
@@ -96,184 +166,375 @@ public final class Drone {
      * This method is called if we want our drone to travel to a list of locations in order, passed in as a list of
      * LongLats called destinations.
      * For each destination (location) in the destinations list:
-     * &#064;RP: We check if there is a direct route to the destination without any NFZ's blocking the path.
-     * If there is not, then we direct the drone towards the landmark which is closest to the destination, while checking for
-     * unexpected visits to NFZ's because of the rounding angle problem. Once we have reached this landmark, we repeat
-     * from &#064;RP until there is a direct route.
+     * We check if there is a direct route to the destination without any NFZ's blocking the path.
+     * If there is not, then we fly through the chain of waypoints that the visibility graph gives as the shortest route
+     * around the NFZ's (see flyAroundNfzs).
      * We then direct the drone towards the destination while checking for unexpected visits to NFZ's because of the
      * rounding angle problem, until we have reached the destination.
-     * After every move (fly or hover), we add the new position to a list of points, which will be used for the GeoJson file
-     * that we create.
+     * Every move (fly or hover) is added to the flight log, which will be used for the flightpath table and the GeoJson
+     * file that we create.
      *
      *
      * @param landmarkPoints List of points which contains the locations of all the landmarks, which we may divert toward
-     *                       if there is no direct route to the destination.
+     *                       if the visibility graph does not give a route to the destination.
      * @param destinations List of LongLat objects which is the points we are trying to visit. These consist of
      *                     landmarks, shops and a pick up location.
      * @param buildings Buildings object which contains the required information about the NFZ's that we check for when we
      *                  move toward the destination.
-     * @param path List of points which we keep passing into this method until the end of the day.
      *
+     */
+    public final void algorithm (List<Point> landmarkPoints, List<LongLat> destinations, Buildings buildings){
+
+        for (LongLat destination : destinations) {
+            flyLeg(landmarkPoints, destination, true, buildings);
+        }
+    }
+
+
+    /**
+     *
+     * This method works the same as the algorithm method above, however instead of passing in a list of destinations,
+     * we have one destination which is hardcoded as Appleton Tower, and we do not hover once we get there.
+     * This method is used at the end of the day when we have either run out of moves or we have completed delivering the orders.
      *
+     * @param landmarkPoints List of points which contains the locations of all the landmarks, which we may divert toward
+     *                        if there is no route to Appleton Tower in the visibility graph.
+     * @param buildings Buildings object which contains the required information about the NFZ's that we check for when we
+     *                  move toward Appleton Tower.
      */
-    public final void algorithm (List<Point> landmarkPoints, List<LongLat> destinations, Buildings buildings, List<Point> path){
+    public final void algorithmEnd (List<Point> landmarkPoints, Buildings buildings){
 
-        int bestAngle;
+        flyLeg(landmarkPoints, appletonTower, false, buildings);
+    }
 
-        for (LongLat destination : destinations) {
+    /**
+     *
+     * This method flies one leg of a route: getting around any NFZ's on the way, flying to the destination and then
+     * hovering there if required.
+     * If the lattice planner is used and it finds a plan, the drone flies the planned moves (stopping if the battery runs
+     * out, as when steering); otherwise it gets around the NFZ's and steers toward the destination.
+     * A dry-run drone first looks the leg up in the leg cost cache of the buildings, and if it has been flown before
+     * from the same position, it makes the same moves again without checking them for NFZ's (see makeMove).
+     * Once a leg has been flown, its moves are stored in the cache for later dry runs, as long as the drone got to the
+     * destination before the battery ran out.
+     *
+     * @param landmarkPoints List of points which contains the locations of all the landmarks.
+     * @param destination LongLat object of the destination of the leg.
+     * @param hoverAtEnd Whether the drone hovers once it reaches the destination.
+     * @param buildings Buildings object which contains the NFZ's and the leg cost cache.
+     */
+    private void flyLeg (List<Point> landmarkPoints, LongLat destination, boolean hoverAtEnd, Buildings buildings){
+
+        LegCostCache legCostCache = buildings.getLegCostCache();
+        LongLat start = getPosition();
 
-            while (!buildings.checkDirectRoute(position, destination)) {
-                LongLat closestLandmark = position.getClosestLandmarkToDestination(landmarkPoints, destination, buildings);
-                while (position.notCloseTo(closestLandmark)) {
-                    bestAngle = position.angleToDodgePotentialNfz(buildings, position.bestAngle(closestLandmark), closestLandmark);
-                    fly(bestAngle);
-                    path.add(Point.fromLngLat(position.lng, position.lat));
+        if (dryRun){
+            LegCostCache.LegCost legCost = legCostCache.get(start, destination, hoverAtEnd);
+            if (legCost != null){
+                for (int i = 0; i < legCost.moves; i++) {
+                    makeMove(legCost.getAngle(i));
                 }
+                return;
             }
+        }
 
-            while (position.notCloseTo(destination)){
-                bestAngle = position.angleToDodgePotentialNfz(buildings, position.bestAngle(destination), destination);
-                fly(bestAngle);
-                path.add(Point.fromLngLat(position.lng, position.lat));
-            }
+        int movesBeforeLeg = flightLog.size();
 
+        int[] plannedMoves = LATTICE_PLANNER ? LatticePlanner.plan(buildings, lng, lat, destination.lng, destination.lat) : null;
+        boolean flewAllMoves = true;
+        if (plannedMoves != null) {
+            int move = 0;
+            for (; move < plannedMoves.length && battery > 0; move++) {
+                fly(plannedMoves[move]);
+            }
+            flewAllMoves = move == plannedMoves.length;
+        } else {
+            flyAroundNfzs(landmarkPoints, destination, buildings);
+            flyTowards(destination, buildings);
+        }
+        boolean reachedDestination = flewAllMoves && !getPosition().notCloseTo(destination);
 
+        if (hoverAtEnd){
             this.hover();
-            path.add(Point.fromLngLat(position.lng, position.lat));
+        }
+
+        //A leg that was cut short when the battery ran out does not end at its destination, so it is not stored: a later
+        //dry run of the same leg may have more battery left and would otherwise take the cut short moves.
+        if (reachedDestination){
+            legCostCache.put(start, destination, hoverAtEnd,
+                    new LegCostCache.LegCost(getPosition(), flightLog.copyAngles(movesBeforeLeg)));
         }
     }
 
+    /**
+     * Method that makes a move that has already been worked out, which is a hover for the junk value -999 and a fly
+     * at the given angle otherwise.
+     * @param angle The angle of the move, or the junk value -999 for a hover.
+     */
+    private void makeMove(int angle){
+        if (angle == LongLat.JUNK_VALUE){
+            hover();
+        } else {
+            fly(angle);
+        }
+    }
 
     /**
      *
-     * This method works the same as the algorithm method above, however instead of passing in a list of destinations,
-     * we have one destination which is hardcoded as Appleton Tower.
-     * This method is used at the end of the day when we have either run out of moves or we have completed delivering the orders.
+     * This method brings the drone to a position from which there is a direct route to the destination.
+     * While there is no direct route, we ask the visibility graph for the shortest route around the NFZ's from where we
+     * are and fly to its first waypoint that we are not already close to.
+     * The route is worked out again at each waypoint, since reaching a waypoint only brings us close to it and the
+     * view from there can be slightly different.
+     * If every waypoint of the route has been reached, we are close enough to see the destination and stop here.
+     * If the graph has no route at all, we fall back to directing the drone towards the landmark which is closest to the
+     * destination.
+     * The number of waypoints flown to is limited by MAX_REROUTES so that the drone can never get stuck here.
      *
-     * @param landmarkPoints List of points which contains the locations of all the landmarks, which we may divert toward
-     *                        if there is no direct route to Appleton Tower.
-     * @param buildings Buildings object which contains the required information about the NFZ's that we check for when we
-     *                  move toward Appleton Tower.
-     * @param path List of points which, after calling this method for our main drone, should be the final time it is updated.
+     * @param landmarkPoints List of points which contains the locations of all the landmarks.
+     * @param destination LongLat object that we want a direct route to.
+     * @param buildings Buildings object which contains the NFZ's and the visibility graph around them.
      */
-    public final void algorithmEnd (List<Point> landmarkPoints, Buildings buildings, List<Point> path){
+    private void flyAroundNfzs (List<Point> landmarkPoints, LongLat destination, Buildings buildings){
 
-        int bestAngle;
+        for (int reroutes = 0; reroutes < MAX_REROUTES && !buildings.checkDirectRoute(lng, lat, destination.lng, destination.lat); reroutes++) {
 
-        while (position.notCloseTo(appletonTower)){
+            LongLat position = getPosition();
+            List<LongLat> route = buildings.getVisibilityGraph().shortestRoute(position, destination);
+            LongLat waypoint = null;
 
-            if (!buildings.checkDirectRoute(position, appletonTower)) {
-                LongLat closestLandmark = position.getClosestLandmarkToDestination(landmarkPoints, appletonTower, buildings);
-                while (position.notCloseTo(closestLandmark)){
-                    bestAngle = position.angleToDodgePotentialNfz(buildings, position.bestAngle(closestLandmark), closestLandmark);
-                    fly(bestAngle);
-                    path.add(Point.fromLngLat(position.lng, position.lat));
+            if (route.isEmpty()) {
+                waypoint = position.getClosestLandmarkToDestination(landmarkPoints, destination, buildings);
+                //No landmark can be travelled to directly, so it still has the junk value position.
+                if (waypoint.lng == LongLat.JUNK_VALUE) {
+                    return;
+                }
+            } else {
+                for (LongLat routeWaypoint : route) {
+                    if (position.notCloseTo(routeWaypoint)) {
+                        waypoint = routeWaypoint;
+                        break;
+                    }
                 }
             }
-            else{
-                bestAngle = position.angleToDodgePotentialNfz(buildings, position.bestAngle(appletonTower), appletonTower);
+
+            if (waypoint == null || !position.notCloseTo(waypoint)) {
+                return;
+            }
+            flyTowards(waypoint, buildings);
+        }
+    }
+
+    /**
+     *
+     * This method directs the drone towards a target while checking for unexpected visits to NFZ's because of the
+     * rounding angle problem, until we are close to the target.
+     * We also stop if the battery runs out, since the drone can get stuck going back and forth between NFZ's that are
+     * close together; a dry-run drone that gets stuck then has no battery left, so the order is not done.
+     * If every move from where the drone is would go into a NFZ (see LongLat.angleToDodgePotentialNfz), it hovers.
+     * This is where almost every move is made, so it only works with the primitive position of the drone.
+     *
+     * @param target LongLat object that we are flying to.
+     * @param buildings Buildings object which contains the NFZ's that we must not fly through.
+     */
+    private void flyTowards (LongLat target, Buildings buildings){
+
+        int bestAngle;
+
+        while (battery > 0 && LongLat.distance(lng, lat, target.lng, target.lat) > LongLat.DEFAULT_DISTANCE) {
+            bestAngle = LongLat.angleToDodgePotentialNfz(buildings, lng, lat,
+                    LongLat.bestAngle(lng, lat, target.lng, target.lat), target.lng, target.lat);
+            if (bestAngle == LongLat.NO_ANGLE) {
+                //Every move goes into a NFZ, so the drone hovers where it is rather than flying into one. It cannot get
+                //any further, so it hovers until the battery runs out, which marks a dry run's route as not done.
+                hover();
+            } else {
                 fly(bestAngle);
-                path.add(Point.fromLngLat(position.lng, position.lat));
             }
         }
     }
 
     /**
      *
-     * This method checks the number of moves a 'dummy' drone takes to complete an order plus the number of moves
-     * it takes to travel back to AT.
-     * It does this by normally using the algorithm and algorithmEnd methods with a dummy drone instance.
-     * We need to make sure that the number of moves made by the dummy drone is less then or equal to the battery
-     * of our main drone so that we are guaranteed that our main drone has enough battery to complete the order and
-     * return back to AT if we are finished with the day.
+     * This method plans an order: a 'dummy' drone flies the order from where our main drone is, and every move it makes
+     * is recorded in a flight plan. This is the only time the route of the order is worked out, since the plan is then
+     * used both to check the battery (see sufficientNumberOfMovesForOrder) and to fly the order (see commit).
+     * It does this by using the algorithm method with a dry-run drone instance, which takes the moves of any leg that
+     * has already been flown (for example while the best order of shops was chosen) from the leg cost cache.
+     * If even the fewest moves the order and the way home could take are more than the battery (see
+     * fewestMovesForOrder), the order cannot be done and it is not planned at all.
      *
      * @param destinations The list of shops, landmarks and pickup location we need to visit in order, to complete the order.
-     *                     This is needed to call the algorithms.
+     *                     This is needed to call the algorithm.
+     * @param landmarkPoints List of points which contains the locations of all the landmarks, which we may divert toward
+     *                       if there is no direct route to the destination. This is also needed for the algorithm.
+     * @param buildings Buildings object which contains the NFZ's, the moves-to-home field and the leg cost cache.
+     * @return FlightPlan of the order from where the drone is, or null if the order clearly does not fit in the battery.
+     */
+    public final FlightPlan planOrder(List<LongLat> destinations, List<Point> landmarkPoints, Buildings buildings){
+
+        LongLat start = getPosition();
+        if (fewestMovesForOrder(start, destinations, buildings.getHomeCostField()) > battery) {
+            return null;
+        }
+
+        Drone dummyDrone = Drone.dryRun(start);
+        dummyDrone.algorithm(landmarkPoints, destinations, buildings);
+        return new FlightPlan(start, destinations, dummyDrone.flightLog.copyAngles(0), dummyDrone.getPosition(),
+                dummyDrone.battery > 0);
+    }
+
+    /**
+     *
+     * This method checks the number of moves of an order's plan plus the number of moves it takes to travel back to AT.
+     * We need to make sure that this is less then or equal to the battery of our main drone so that we are guaranteed
+     * that our main drone has enough battery to complete the order and return back to AT if we are finished with the day.
+     * The moves-to-home field of the buildings (see HomeCostField) rejects an order without flying home if even the
+     * fewest moves home from the end of the plan do not fit in what is left of the battery.
+     * Otherwise, a dry-run drone flies home from the end of the plan with the algorithmEnd method, as it always used to,
+     * since only the moves it actually makes can show that the drone gets home.
+     *
+     * @param plan FlightPlan of the order from where the drone is, made with planOrder.
      * @param landmarkPoints List of points which contains the locations of all the landmarks, which we may divert toward
-     *      *                       if there is no direct route to the destination. This is also needed for the algorithms.
+     *                       if there is no direct route to Appleton Tower. This is needed for algorithmEnd.
      * @param buildings Buildings object which contains the required information about the NFZ's that we check for when we
-     *      *                  move toward Appleton Tower. This is also needed for the algorithms.
+     *                  move toward Appleton Tower, and the moves-to-home field.
      * @return Boolean value true if we have enough moves to go through with the order at question, and false otherwise.
      */
-    public final boolean sufficientNumberOfMovesForOrder(List<LongLat> destinations, List<Point> landmarkPoints, Buildings buildings){
-        Drone dummyDrone = new Drone();
-        dummyDrone.position = position;
-        dummyDrone.algorithm(landmarkPoints, destinations, buildings, new ArrayList<>());
-        dummyDrone.algorithmEnd(landmarkPoints, buildings, new ArrayList<>());
-        return dummyDrone.moves <= battery;
+    public final boolean sufficientNumberOfMovesForOrder(FlightPlan plan, List<Point> landmarkPoints, Buildings buildings){
+
+        if (!plan.complete) {
+            return false;
+        }
+
+        HomeCostField homeCostField = buildings.getHomeCostField();
+        if (homeCostField.fewestMovesHome(plan.end.lng, plan.end.lat) > battery - plan.getMoves()) {
+            return false;
+        }
+
+        Drone homeDrone = Drone.dryRun(plan.end);
+        homeDrone.battery -= plan.getMoves();
+        homeDrone.algorithmEnd(landmarkPoints, buildings);
+        return homeDrone.battery > 0 && plan.getMoves() + homeDrone.moves <= battery;
     }
 
     /**
-     * Getter for drone position.
-     * @return Drone position as a LongLat object.
+     *
+     * This method makes our main drone fly an order that has been planned, by making every planned move in turn.
+     * The moves were checked for NFZ's when the plan was made, so they are not checked again, and the drone goes through
+     * exactly the positions of the plan since it starts from the same position.
+     * Every move is added to the flight log (and the GeoJson file) just as if the drone had worked the route out itself.
+     *
+     * @param plan FlightPlan of the order, made with planOrder from where the drone is now.
      */
-    public final LongLat getPosition(){
-        return position;
+    public final void commit(FlightPlan plan){
+        for (int i = 0; i < plan.getMoves(); i++) {
+            makeMove(plan.getAngle(i));
+        }
     }
 
     /**
-     * Getter for number of moves made by drone.
-     * @return Number of moves the drone has made.
+     * Method that finds the fewest moves an order could possibly take from a given position, including the way home.
+     * This is used both for the drone's own position (see planOrder) and by the fleet to choose which drone a new
+     * order goes to.
+     * Each leg takes at least as many moves as its straight line needs, less the default distance at each end (the
+     * drone only gets within the default distance of each destination), plus the hover at its destination.
+     * The way home takes at least the fewest moves home from the last destination (one fewer, since the drone stops
+     * within the default distance of it), or none if the moves-to-home field has no cost there.
+     *
+     * @param start LongLat object of the position the order is started from.
+     * @param destinations The list of shops, landmarks and pickup location of the order, in order.
+     * @param homeCostField The moves-to-home field of the buildings.
+     * @return The fewest moves the order and the way home could take.
      */
-    public final int getMoves(){
-        return moves;
+    static int fewestMovesForOrder(LongLat start, List<LongLat> destinations, HomeCostField homeCostField){
+
+        int fewestMoves = 0;
+        double fromLng = start.lng;
+        double fromLat = start.lat;
+        //The order starts exactly from the start, but only within the default distance of each destination after.
+        double slack = LongLat.DEFAULT_DISTANCE;
+        for (LongLat destination : destinations) {
+            double distance = LongLat.distance(fromLng, fromLat, destination.lng, destination.lat);
+            fewestMoves += Math.max(0, (int) Math.ceil((distance - slack) / LongLat.DEFAULT_DISTANCE - 1e-9)) + 1;
+            fromLng = destination.lng;
+            fromLat = destination.lat;
+            slack = 2 * LongLat.DEFAULT_DISTANCE;
+        }
+        fewestMoves += Math.max(0, homeCostField.fewestMovesHome(fromLng, fromLat) - 1);
+        return fewestMoves;
+    }
+
+    /**
+     * Getter for drone position.
+     * @return Drone position as a new LongLat object.
+     */
+    public final LongLat getPosition(){
+        return new LongLat(lng, lat);
     }
 
     /**
-     * Getter for the positions the drone has moved from.
-     * @return List of LongLat objects representing the positions the drone has moved from.
+     * Getter for the battery of the drone.
+     * @return Number of moves the drone has left.
      */
-    public final List<LongLat> getMovesFrom(){
-        return movesFrom;
+    public final int getBattery(){
+        return battery;
     }
 
     /**
-     * Getter for the positions the drone has moved to.
-     * @return List of LongLat objects representing the positions the drone has moved to.
+     * Getter for number of moves made by drone.
+     * @return Number of moves the drone has made.
      */
-    public final List<LongLat> getMovesTo(){
-        return movesTo;
+    public final int getMoves(){
+        return moves;
     }
 
     /**
-     * Getter for the angles the drone has taken throughout its moves.
-     * @return List of integers that is the angles the drone has taken in each move.
+     * Getter for the flight log of the drone.
+     * @return FlightLog object with every move the drone has made since the log was last reset.
      */
-    public final List<Integer> getAnglesOfMoves(){
-        return anglesOfMoves;
+    public final FlightLog getFlightLog(){
+        return flightLog;
     }
 
     /**
      * Setter for the drones position.
+     * Since the drone did not fly there, the flight log is started again from the new position.
      * @param newPosition The new position that the drone should be at.
      */
     public final void setPosition(LongLat newPosition){
-        this.position = newPosition;
+        this.lng = newPosition.lng;
+        this.lat = newPosition.lat;
+        flightLog = new FlightLog(newPosition);
     }
 
     /**
-     * Setter for the drones movesFrom list.
-     * @param newMovesFrom Updated list of positions that the drone has moved from (for an order, so will be empty
-     *                     at the start of each order).
+     * Method that empties the flight log once its moves have been written to the tables, making it ready for the
+     * next order.
      */
-    public final void setMovesFrom(List<LongLat> newMovesFrom){
-        this.movesFrom = newMovesFrom;
+    public final void resetFlightLog(){
+        flightLog.reset();
     }
+
     /**
-     * Setter for the drones movesTo list.
-     * @param newMovesTo Updated list of positions that the drone has moved to (for an order, so will be empty
-     *                     at the start of each order).
+     * Method that hands over the flight log once an order is complete, so its moves can be written to the tables while
+     * the drone goes on to plan its next order. The drone starts a new flight log from where it is now.
+     * @return FlightLog object with every move the drone has made since the log was last handed over or reset.
      */
-    public final void setMovesTo(List<LongLat> newMovesTo){
-        this.movesTo = newMovesTo;
+    public final FlightLog takeFlightLog(){
+        FlightLog completed = flightLog;
+        flightLog = new FlightLog(getPosition());
+        return completed;
     }
 
     /**
-     * Setter for the drones angleOfMoves list.
-     * @param newAnglesOfMoves Updated list of angles the drone has taken when moving.
+     * Setter for the line string of the GeoJson file that the drone's positions are written to as it moves.
+     * The drone's current position is written first, since this is where its path starts.
+     * @param pathWriter LineStringWriter of the drone's path.
      */
-    public final void setAnglesOfMoves(List<Integer> newAnglesOfMoves){
-        this.anglesOfMoves = newAnglesOfMoves;
+    public final void setPathWriter(GeoJsonPathWriter.LineStringWriter pathWriter){
+        this.pathWriter = pathWriter;
+        pathWriter.add(lng, lat);
     }
 
 }
\ No newline at end of file
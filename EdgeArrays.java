@@ -0,0 +1,66 @@
+package uk.ac.ed.inf;
+
+/**
+ * This class holds line segments (the NFZ edges) as primitive arrays of coordinates, one array per coordinate, rather
+ * than as an array of Line2D objects.
+ * Segment i is from (x1[i], y1[i]) to (x2[i], y2[i]), and its bounding box is from (minX[i], minY[i]) to
+ * (maxX[i], maxY[i]).
+ * Keeping each coordinate in an array of its own means the same coordinate of neighbouring segments is next to each
+ * other in memory, so an intersection kernel can load several segments at once.
+ * The arrays are filled once when they are created and never changed afterwards.
+ */
+final class EdgeArrays {
+
+    public final double[] x1;
+    public final double[] y1;
+    public final double[] x2;
+    public final double[] y2;
+    public final double[] minX;
+    public final double[] minY;
+    public final double[] maxX;
+    public final double[] maxY;
+
+    /**
+     * Constructor for class EdgeArrays, with room for a given number of segments which are then added with set.
+     * @param size The number of segments.
+     */
+    EdgeArrays(int size) {
+        x1 = new double[size];
+        y1 = new double[size];
+        x2 = new double[size];
+        y2 = new double[size];
+        minX = new double[size];
+        minY = new double[size];
+        maxX = new double[size];
+        maxY = new double[size];
+    }
+
+    /**
+     * Method that sets a segment and its bounding box.
+     * This is only used while the arrays are being filled.
+     *
+     * @param i Index of the segment.
+     * @param startX X coordinate (longitude) of the start of the segment.
+     * @param startY Y coordinate (latitude) of the start of the segment.
+     * @param endX X coordinate (longitude) of the end of the segment.
+     * @param endY Y coordinate (latitude) of the end of the segment.
+     */
+    void set(int i, double startX, double startY, double endX, double endY) {
+        x1[i] = startX;
+        y1[i] = startY;
+        x2[i] = endX;
+        y2[i] = endY;
+        minX[i] = Math.min(startX, endX);
+        minY[i] = Math.min(startY, endY);
+        maxX[i] = Math.max(startX, endX);
+        maxY[i] = Math.max(startY, endY);
+    }
+
+    /**
+     * Getter for the number of segments.
+     * @return Number of segments.
+     */
+    public int size() {
+        return x1.length;
+    }
+}
@@ -0,0 +1,528 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * This class represents the fleet of drones that deliver the orders of a day, all starting from Appleton Tower.
+ * The number of drones is set with the ilp.drones system property, and is 1 by default.
+ *
+ * Each drone has its own queue of orders, which starts as the drone's sequence from the order sequencer (see
+ * OrderSequencer.sequenceForDrones). A drone takes orders from the front of its own queue, and once that is empty it steals the
+ * last order of the longest queue of another drone, unless it has turned that order down. The orders further up that
+ * queue are left alone, as they are the other drone's plan. An order that a drone does not have enough moves for is
+ * passed on to the back of the queue of a drone that has not turned it down yet, and is dropped once every drone has
+ * turned it down.
+ *
+ * Every attempt at an order is a separate task on a work-stealing ForkJoinPool with (at most) one thread per core,
+ * which forks the next attempt of the same drone when it is done. So the drones are planned at the same time, and
+ * the time taken depends on the number of cores rather than the number of drones.
+ * With one drone, this is the same as going through the orders one by one.
+ *
+ * The rows of the orders are not written by the drones themselves: a drone hands the flight log of every completed
+ * order to an OrderWriter, which writes them on a thread of its own while the drone plans its next order.
+ *
+ * Orders placed later in the day can be added while the fleet is delivering (see addOrders). Until the fleet is told
+ * that no more orders will come, a drone with no orders left waits where it is rather than going back to AT, and is
+ * woken up when there are orders again. Adding orders does not plan the day again: each new order is put in the queue
+ * of the drone it would take the fewest moves from where that drone is now (out of the drones with the battery for it),
+ * behind its more valuable orders, and the drone plans the order from wherever it is, with whatever battery it has
+ * left, once it gets to it, the same as every other order.
+ *
+ */
+final class Fleet {
+
+    /**
+     * The number of drones in the fleet, which can be set with the ilp.drones system property.
+     */
+    public static final int DEFAULT_DRONE_COUNT = Integer.getInteger("ilp.drones", 1);
+
+    private final Drone[] drones;
+    /**
+     * The queue of orders of every drone. Every queue is only used while holding the lock on this list.
+     */
+    private final List<Deque<String>> orderQueues = new ArrayList<>();
+    /**
+     * The drones that have turned down each order because they did not have enough moves for it.
+     */
+    private final Map<String, Set<Integer>> declinedBy = new ConcurrentHashMap<>();
+    /**
+     * Whether each drone has run out of orders and gone back to AT (or has stopped because of an exception), so it must
+     * not be passed any more orders.
+     * This is only used while holding the lock on the order queues.
+     */
+    private final boolean[] finished;
+    /**
+     * The drones that have no orders left but are waiting for more, rather than going back to AT.
+     * This is only used while holding the lock on the order queues.
+     */
+    private final Deque<Integer> idleDrones = new ArrayDeque<>();
+    /**
+     * Where each drone is and how many moves it has left, as of the last order it delivered, so that new orders can be
+     * given to a drone without looking at a drone that is flying on another thread.
+     * These are only used while holding the lock on the order queues.
+     */
+    private final LongLat[] positions;
+    private final int[] batteries;
+    /**
+     * Whether orders can still be added, so a drone with no orders left waits for more.
+     * This is only used while holding the lock on the order queues.
+     */
+    private boolean acceptingOrders;
+    /**
+     * The total cost in pence of the orders delivered by the fleet.
+     */
+    private final AtomicInteger monetaryValue = new AtomicInteger();
+    /**
+     * The writer of the deliveries and flightpath rows, which is only there while the fleet is delivering.
+     */
+    private OrderWriter orderWriter;
+    /**
+     * The pool the steps of the drones run on, and the count of drones that are not back at AT yet, which are only
+     * there while the fleet is delivering.
+     */
+    private ForkJoinPool pool;
+    private CountDownLatch dronesBack;
+
+    /**
+     * Everything the drones need to plan the orders of the day, which they all share since it cannot be changed.
+     * This is replaced by a new context when orders are added.
+     */
+    private volatile PlanningContext context;
+    private final Orders orders;
+
+    /**
+     * Constructor for class Fleet.
+     * Every drone starts at Appleton Tower, and gets its own line string in the GeoJson file which its path is
+     * written to as it flies.
+     *
+     * @param droneCount The number of drones in the fleet.
+     * @param context PlanningContext of the day, with the orders, menus, buildings and landmarks.
+     * @param orders Orders object which the deliveries and flightpath rows are written with.
+     * @param pathWriter GeoJsonPathWriter of the GeoJson file the paths of the drones are written to.
+     */
+    Fleet(int droneCount, PlanningContext context, Orders orders, GeoJsonPathWriter pathWriter) {
+
+        this.context = context;
+        this.orders = orders;
+
+        drones = new Drone[droneCount];
+        finished = new boolean[droneCount];
+        positions = new LongLat[droneCount];
+        batteries = new int[droneCount];
+        for (int i = 0; i < droneCount; i++) {
+            drones[i] = new Drone();
+            positions[i] = drones[i].getPosition();
+            batteries[i] = drones[i].getBattery();
+            drones[i].setPathWriter(pathWriter.newLineString());
+            orderQueues.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Method that makes the fleet deliver as many orders as it can, each drone attempting the orders of its own
+     * sequence, and then brings every drone back to Appleton Tower. It returns once every drone is back and all of
+     * their rows have been written to the database.
+     *
+     * @param droneSequences List of the order numbers of every drone, in the sequence they should be attempted in.
+     */
+    public void deliver(List<List<String>> droneSequences) {
+        start(droneSequences, false);
+        finish();
+    }
+
+    /**
+     * Method that starts the drones delivering the orders, each drone attempting the orders of its own sequence,
+     * without waiting for them.
+     *
+     * @param droneSequences List of the order numbers of every drone, in the sequence they should be attempted in,
+     *                       which must have one sequence per drone.
+     * @param moreOrdersToCome Whether orders can be added later with addOrders, in which case the drones wait for them
+     *                         until finish is called, rather than going back to AT once they have no orders left.
+     */
+    public void start(List<List<String>> droneSequences, boolean moreOrdersToCome) {
+
+        if (droneSequences.size() != drones.length) {
+            throw new IllegalArgumentException("Expected a sequence for each of the " + drones.length + " drones, but got "
+                    + droneSequences.size() + ".");
+        }
+
+        synchronized (orderQueues) {
+            acceptingOrders = moreOrdersToCome;
+            for (int i = 0; i < drones.length; i++) {
+                orderQueues.get(i).addAll(droneSequences.get(i));
+            }
+        }
+
+        int threads = Math.min(drones.length, Runtime.getRuntime().availableProcessors());
+        pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        dronesBack = new CountDownLatch(drones.length);
+        orderWriter = new OrderWriter(orders, OrderWriter.DEFAULT_QUEUE_SIZE);
+
+        //The first steps are forked from inside the pool so that they all go in the same first-in-first-out queue,
+        //which makes the drones take turns even when there are fewer threads than drones.
+        pool.execute(() -> {
+            for (int i = 0; i < drones.length; i++) {
+                new DroneStep(i).fork();
+            }
+        });
+    }
+
+    /**
+     * Method that adds orders placed later in the day while the fleet is delivering, and wakes up the drones that are
+     * waiting for orders.
+     * Every new order goes to the drone it would take the fewest moves from where that drone is, out of the drones
+     * that have enough battery left for it (see cheapestDrone), in front of the first order in its queue that is worth
+     * less. Nothing else in the queues is changed.
+     * The tours of the new orders are worked out without holding the lock, so the drones are not held up by it.
+     *
+     * @param newContext PlanningContext which has the new orders as well as every order already in the fleet.
+     * @param newOrderNos List of the order numbers of the new orders.
+     * @throws IllegalStateException If the fleet has not been started with more orders to come, or has been told
+     *                               that no more orders will come.
+     */
+    public void addOrders(PlanningContext newContext, List<String> newOrderNos) {
+
+        LongLat[] positionsNow;
+        int[] batteriesNow;
+        boolean[] finishedNow;
+        synchronized (orderQueues) {
+            if (pool == null || !acceptingOrders) {
+                throw new IllegalStateException("Orders can only be added after the fleet is started with more orders "
+                        + "to come, and before it is finished.");
+            }
+            positionsNow = positions.clone();
+            batteriesNow = batteries.clone();
+            finishedNow = finished.clone();
+        }
+
+        context = newContext;
+        int[] droneOfOrder = new int[newOrderNos.size()];
+        for (int i = 0; i < newOrderNos.size(); i++) {
+            droneOfOrder[i] = cheapestDrone(newContext, newOrderNos.get(i), positionsNow, batteriesNow, finishedNow);
+        }
+
+        synchronized (orderQueues) {
+            for (int i = 0; i < newOrderNos.size(); i++) {
+                //A drone may have gone back to AT since it was chosen, in which case the next drone gets the order.
+                for (int j = 0; j < drones.length; j++) {
+                    int drone = (droneOfOrder[i] + j) % drones.length;
+                    if (!finished[drone]) {
+                        insertByValue(orderQueues.get(drone), newOrderNos.get(i), newContext.ordersSortedByValue);
+                        break;
+                    }
+                }
+            }
+            wakeIdleDrones();
+        }
+    }
+
+    /**
+     * Method that chooses the drone a new order goes to: the one the order (and the way home after it) would take the
+     * fewest moves from, counted from where the drone is with Drone.fewestMovesForOrder, out of the drones that have
+     * at least that many moves left. If no drone has enough moves left, it goes to the drone with the most moves left,
+     * which then passes it on or drops it like any other order it does not have enough moves for.
+     *
+     * @param context PlanningContext which has the order.
+     * @param orderNo The order number.
+     * @param positions Where each drone is.
+     * @param batteries How many moves each drone has left.
+     * @param finished Whether each drone has gone back to AT.
+     * @return The index of the drone, or 0 if every drone has gone back to AT.
+     */
+    private static int cheapestDrone(PlanningContext context, String orderNo, LongLat[] positions, int[] batteries,
+                                     boolean[] finished) {
+
+        HomeCostField homeCostField = context.buildings.getHomeCostField();
+        int cheapest = -1;
+        int cheapestMoves = Integer.MAX_VALUE;
+        int mostBattery = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (finished[i]) {
+                continue;
+            }
+            int moves = Drone.fewestMovesForOrder(positions[i], context.tourOfOrder(positions[i], orderNo), homeCostField);
+            if (moves <= batteries[i] && moves < cheapestMoves) {
+                cheapest = i;
+                cheapestMoves = moves;
+            }
+            if (batteries[i] > batteries[mostBattery] || finished[mostBattery]) {
+                mostBattery = i;
+            }
+        }
+        return cheapest >= 0 ? cheapest : mostBattery;
+    }
+
+    /**
+     * Method that tells the fleet that no more orders will be added, and waits until every drone has delivered what
+     * it can and is back at Appleton Tower, and all of their rows have been written to the database.
+     *
+     * @throws IllegalStateException If the fleet has not been started.
+     */
+    public void finish() {
+
+        synchronized (orderQueues) {
+            if (pool == null) {
+                throw new IllegalStateException("The fleet has to be started before it can be finished.");
+            }
+            acceptingOrders = false;
+            //The waiting drones find no orders, so they go back to AT.
+            wakeIdleDrones();
+        }
+
+        try {
+            dronesBack.await();
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted while waiting for the drones to finish.");
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+        orderWriter.close();
+    }
+
+    /**
+     * Method that puts an order in a queue in front of the first order that is worth less.
+     * This is only used while holding the lock on the order queues.
+     */
+    private static void insertByValue(Deque<String> queue, String orderNo, Map<String, Integer> ordersSortedByValue) {
+
+        int value = ordersSortedByValue.get(orderNo);
+        List<String> remainder = new ArrayList<>(queue);
+        int position = 0;
+        while (position < remainder.size() && ordersSortedByValue.get(remainder.get(position)) >= value) {
+            position++;
+        }
+        remainder.add(position, orderNo);
+        queue.clear();
+        queue.addAll(remainder);
+    }
+
+    /**
+     * Method that starts the next step of every drone that is waiting for orders.
+     * This is only used while holding the lock on the order queues.
+     */
+    private void wakeIdleDrones() {
+        while (!idleDrones.isEmpty()) {
+            pool.execute(new DroneStep(idleDrones.pollFirst()));
+        }
+    }
+
+    /**
+     * Method that gives a drone its next order: the first one in its own queue, or else the last one in the longest
+     * queue of another drone, as long as it has not turned that order down.
+     * It does not look further up the other queues than their last order: those orders are the other drone's plan, and
+     * taking them leaves that drone with moves it then spends on orders far from its route.
+     *
+     * If there are no orders left for the drone, it either waits for more orders (if they can still be added) or
+     * counts as finished. This is decided while holding the same lock as the check for orders, so that exactly one
+     * step of the drone is told to go back to AT.
+     *
+     * @param drone The index of the drone.
+     * @return NextOrder with the order number, or NextOrder.WAIT or NextOrder.GO_HOME if there are no orders left for
+     * this drone.
+     */
+    private NextOrder takeOrder(int drone) {
+
+        synchronized (orderQueues) {
+            String orderNo = orderQueues.get(drone).pollFirst();
+            if (orderNo != null) {
+                return new NextOrder(orderNo);
+            }
+
+            List<Deque<String>> longestFirst = new ArrayList<>(orderQueues);
+            longestFirst.sort((a, b) -> b.size() - a.size());
+            for (Deque<String> queue : longestFirst) {
+                orderNo = queue.peekLast();
+                if (orderNo != null && !declinedBy.getOrDefault(orderNo, Set.of()).contains(drone)) {
+                    return new NextOrder(queue.pollLast());
+                }
+            }
+            if (acceptingOrders) {
+                idleDrones.addLast(drone);
+                return NextOrder.WAIT;
+            }
+            finished[drone] = true;
+            return NextOrder.GO_HOME;
+        }
+    }
+
+    /**
+     * Method that passes an order a drone does not have enough moves for on to the next drone that has not turned it
+     * down and is not finished, at the back of its queue so that it does not get in the way of that drone's plan,
+     * waking it up if it is waiting for orders. If there is no such drone, it is dropped.
+     *
+     * @param drone The index of the drone that turned the order down.
+     * @param orderNo The order number.
+     */
+    private void decline(int drone, String orderNo) {
+
+        Set<Integer> declined = declinedBy.computeIfAbsent(orderNo, k -> ConcurrentHashMap.newKeySet());
+        declined.add(drone);
+
+        synchronized (orderQueues) {
+            for (int i = 1; i < drones.length; i++) {
+                int next = (drone + i) % drones.length;
+                if (!declined.contains(next) && !finished[next]) {
+                    orderQueues.get(next).addLast(orderNo);
+                    if (idleDrones.remove(next)) {
+                        pool.execute(new DroneStep(next));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that makes a drone attempt an order.
+     * We pre-compute the most efficient route from where the drone is with the planning context (which uses the method
+     * getTspShopsToVisitLongLatList), and plan every move of it once (see Drone.planOrder).
+     * If the drone has enough moves to make this delivery as well as return back to AT, it completes the order by making
+     * the planned moves, and hands its flight log to the order writer, which writes the order's delivery and flightpath rows to the database in
+     * one transaction.
+     * Otherwise, the order is passed on to another drone.
+     *
+     * @param drone The index of the drone.
+     * @param orderNo The order number.
+     */
+    private void attempt(int drone, String orderNo) {
+
+        PlanningContext context = this.context;
+        long planningStart = Metrics.startTimer();
+        Drone d = drones[drone];
+        List<LongLat> tspShopsToVisitLongLats = context.tourOfOrder(d.getPosition(), orderNo);
+
+        FlightPlan plan = d.planOrder(tspShopsToVisitLongLats, context.landmarkPoints, context.buildings);
+        boolean sufficientMoves = plan != null
+                && d.sufficientNumberOfMovesForOrder(plan, context.landmarkPoints, context.buildings);
+        Metrics.ORDER_PLANNING.recordSince(planningStart);
+
+        if (sufficientMoves) {
+            d.commit(plan);
+            synchronized (orderQueues) {
+                positions[drone] = d.getPosition();
+                batteries[drone] = d.getBattery();
+            }
+            int costInPenceOfOrder = context.ordersSortedByValue.get(orderNo);
+            monetaryValue.addAndGet(costInPenceOfOrder);
+            orderWriter.writeOrder(orderNo, costInPenceOfOrder, d.takeFlightLog(), drone + 1);
+        } else {
+            decline(drone, orderNo);
+        }
+    }
+
+    /**
+     * Method that brings a drone back to AT once it has no orders left, and hands its way back to the order writer to
+     * be written to the flightpath table after the rows of its orders.
+     * This is only called by the one step that takeOrder told to go home, and the drone is counted as back even if
+     * this fails, so that finish does not wait for it forever.
+     *
+     * @param drone The index of the drone.
+     */
+    private void returnHome(int drone) {
+
+        try {
+            Drone d = drones[drone];
+            d.algorithmEnd(context.landmarkPoints, context.buildings);
+            orderWriter.writeReturnHome(d.takeFlightLog(), drone + 1);
+        } catch (RuntimeException e) {
+            System.err.println("Drone " + (drone + 1) + " could not return to Appleton Tower because of an exception.");
+            e.printStackTrace();
+        } finally {
+            dronesBack.countDown();
+        }
+    }
+
+    /**
+     * Getter for the total cost in pence of the orders delivered by the fleet.
+     * @return The total cost in pence.
+     */
+    public int getMonetaryValue() {
+        return monetaryValue.get();
+    }
+
+    /**
+     * Getter for the number of moves made by each drone.
+     * @return Array of the number of moves made by each drone.
+     */
+    public int[] getMoves() {
+        int[] moves = new int[drones.length];
+        for (int i = 0; i < drones.length; i++) {
+            moves[i] = drones[i].getMoves();
+        }
+        return moves;
+    }
+
+    /**
+     * This class is one step of a drone: attempting its next order, or going back to AT if it has none left.
+     * Each step forks the next step of the same drone, so the steps of all the drones are spread over the pool.
+     */
+    private final class DroneStep extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int drone;
+
+        private DroneStep(int drone) {
+            this.drone = drone;
+        }
+
+        @Override
+        protected void compute() {
+
+            NextOrder next = takeOrder(drone);
+            if (next == NextOrder.GO_HOME) {
+                returnHome(drone);
+                return;
+            }
+            if (next == NextOrder.WAIT) {
+                //A drone that is waiting for more orders is started again by a new step when there are some.
+                return;
+            }
+
+            try {
+                attempt(drone, next.orderNo);
+            } catch (RuntimeException e) {
+                System.err.println("Drone " + (drone + 1) + " has stopped because of an exception.");
+                e.printStackTrace();
+                //The drone must not be passed any more orders; the ones left in its queue are taken by the other drones.
+                synchronized (orderQueues) {
+                    finished[drone] = true;
+                }
+                dronesBack.countDown();
+                return;
+            }
+            new DroneStep(drone).fork();
+        }
+    }
+
+    /**
+     * This class is what takeOrder tells a drone to do next: attempt an order, wait for more orders, or go back to AT.
+     */
+    private static final class NextOrder {
+
+        private static final NextOrder WAIT = new NextOrder(null);
+        private static final NextOrder GO_HOME = new NextOrder(null);
+
+        /**
+         * The order number to attempt, which is null for WAIT and GO_HOME.
+         */
+        private final String orderNo;
+
+        private NextOrder(String orderNo) {
+            this.orderNo = orderNo;
+        }
+    }
+
+}
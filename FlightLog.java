@@ -0,0 +1,137 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the log of every move a drone makes while completing an order.
+ * Rather than a list of objects per move, the log is stored as growable primitive arrays: the longitude and latitude
+ * of every position the drone has been at, and the angle of every move.
+ * Since each move starts where the previous one ended, move i is from position i to position i + 1.
+ * A drone hands its log over once an order is complete, so the moves can be written to the tables while the drone
+ * plans its next order, and the log is not changed after that.
+ * A dry-run drone keeps a log too, which is what its flight plan (see FlightPlan) is made from.
+ */
+public final class FlightLog {
+
+    /**
+     * The number of moves the log has room for before its arrays need to grow.
+     */
+    public static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Longitude and latitude of every position in the log, with one more position than there are moves.
+     */
+    private double[] longitudes = new double[INITIAL_CAPACITY + 1];
+    private double[] latitudes = new double[INITIAL_CAPACITY + 1];
+    /**
+     * Angle of every move in the log, which is the junk value -999 for a hover.
+     */
+    private short[] angles = new short[INITIAL_CAPACITY];
+    /**
+     * The number of moves in the log.
+     */
+    private int size = 0;
+
+    /**
+     * Constructor for class FlightLog.
+     * @param start LongLat object of the position the first move will be made from.
+     */
+    FlightLog(LongLat start) {
+        longitudes[0] = start.lng;
+        latitudes[0] = start.lat;
+    }
+
+    /**
+     * Method that adds a move to the log.
+     * The move is from the position at the end of the previous move.
+     *
+     * @param angle The angle of the move, or the junk value -999 for a hover.
+     * @param toLongitude The longitude of the drone at the end of the move.
+     * @param toLatitude The latitude of the drone at the end of the move.
+     */
+    public void add(int angle, double toLongitude, double toLatitude) {
+        if (size == angles.length) {
+            int capacity = angles.length * 2;
+            longitudes = Arrays.copyOf(longitudes, capacity + 1);
+            latitudes = Arrays.copyOf(latitudes, capacity + 1);
+            angles = Arrays.copyOf(angles, capacity);
+        }
+        angles[size] = (short) angle;
+        size += 1;
+        longitudes[size] = toLongitude;
+        latitudes[size] = toLatitude;
+    }
+
+    /**
+     * Method that empties the log so it is ready for the next order.
+     * The position at the end of the last move becomes the position the next move is made from.
+     */
+    public void reset() {
+        longitudes[0] = longitudes[size];
+        latitudes[0] = latitudes[size];
+        size = 0;
+    }
+
+    /**
+     * Getter for the number of moves in the log.
+     * @return Number of moves.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the longitude of the drone at the start of a move, for the fromLongitude column of the flightpath table.
+     * @param move Index of the move in the log.
+     * @return Longitude at the start of the move.
+     */
+    public double getFromLongitude(int move) {
+        return longitudes[move];
+    }
+
+    /**
+     * Getter for the latitude of the drone at the start of a move, for the fromLatitude column of the flightpath table.
+     * @param move Index of the move in the log.
+     * @return Latitude at the start of the move.
+     */
+    public double getFromLatitude(int move) {
+        return latitudes[move];
+    }
+
+    /**
+     * Getter for the longitude of the drone at the end of a move, for the toLongitude column of the flightpath table.
+     * @param move Index of the move in the log.
+     * @return Longitude at the end of the move.
+     */
+    public double getToLongitude(int move) {
+        return longitudes[move + 1];
+    }
+
+    /**
+     * Getter for the latitude of the drone at the end of a move, for the toLatitude column of the flightpath table.
+     * @param move Index of the move in the log.
+     * @return Latitude at the end of the move.
+     */
+    public double getToLatitude(int move) {
+        return latitudes[move + 1];
+    }
+
+    /**
+     * Method that copies the angles of the moves from a given move to the last one, for example the moves of the leg
+     * that has just been flown.
+     * @param from Index of the first move to copy.
+     * @return Array of the angles of the moves, with the junk value -999 for a hover.
+     */
+    public short[] copyAngles(int from) {
+        return Arrays.copyOfRange(angles, from, size);
+    }
+
+    /**
+     * Getter for the angle of a move, for the angle column of the flightpath table.
+     * @param move Index of the move in the log.
+     * @return Angle of the move, or the junk value -999 for a hover.
+     */
+    public int getAngle(int move) {
+        return angles[move];
+    }
+}
@@ -0,0 +1,71 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * This class represents the plan of an order: every move a drone will make to visit the destinations of the order
+ * (its shops in the best order, then its pickup location) from where it is now, and hover at each of them.
+ * A plan is made once, by a dry-run drone (see Drone.planOrder), and then everything else uses it: the check that the
+ * drone has enough battery for the order and the way home looks at its moves and end position, and the drone then
+ * makes exactly the planned moves (see Drone.commit) without working out the route again.
+ * A plan cannot be changed once it is made.
+ */
+public final class FlightPlan {
+
+    /**
+     * The position the plan starts from, which the drone must be at when it makes the planned moves.
+     */
+    public final LongLat start;
+    /**
+     * The destinations of the order, in the order they are visited.
+     */
+    public final List<LongLat> destinations;
+    /**
+     * The position the drone is at after the last planned move.
+     */
+    public final LongLat end;
+    /**
+     * Whether the dry-run drone got to every destination before its battery ran out. A plan that did not is cut
+     * short, and no drone can fly it.
+     */
+    public final boolean complete;
+
+    /**
+     * Angle of every planned move, which is the junk value -999 for a hover.
+     */
+    private final short[] angles;
+
+    /**
+     * Constructor for class FlightPlan.
+     *
+     * @param start The position the plan starts from.
+     * @param destinations The destinations of the order, in order.
+     * @param angles Angle of every planned move, which is kept as it is, so it must not be changed afterwards.
+     * @param end The position after the last planned move.
+     * @param complete Whether the dry-run drone got to every destination.
+     */
+    FlightPlan(LongLat start, List<LongLat> destinations, short[] angles, LongLat end, boolean complete) {
+        this.start = start;
+        this.destinations = List.copyOf(destinations);
+        this.angles = angles;
+        this.end = end;
+        this.complete = complete;
+    }
+
+    /**
+     * Getter for the number of moves (fly and hover) in the plan, which is the battery the order uses.
+     * @return Number of moves.
+     */
+    public int getMoves() {
+        return angles.length;
+    }
+
+    /**
+     * Getter for the angle of a planned move.
+     * @param move Index of the move in the plan.
+     * @return Angle of the move, or the junk value -999 for a hover.
+     */
+    public int getAngle(int move) {
+        return angles[move];
+    }
+}
@@ -0,0 +1,192 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * This class writes the flightpaths of the drones to a GeoJson file as they are flown, rather than keeping every
+ * position in memory and converting it to JSON at the end of the day.
+ * The file is a feature collection with one line string per drone, the same as the one made with the GeoJson classes.
+ *
+ * Each drone's line string is written to a temporary file through a buffered NIO channel, one coordinate at a time as
+ * the drone moves, since the drones of a fleet fly at the same time and the coordinates of each line string must be
+ * next to each other in the file. When the writer is closed, the GeoJson file is put together by copying the
+ * temporary files into it between the JSON that opens and closes each feature, and the temporary files are deleted.
+ * So the memory used stays the same no matter how long the flights are.
+ *
+ */
+final class GeoJsonPathWriter {
+
+    /**
+     * The size in bytes of the buffer of each channel.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The coordinates are rounded to this many decimal places, as the GeoJson classes do.
+     */
+    public static final double COORDINATE_SCALE = 1e7;
+
+    /**
+     * The GeoJson file that is written.
+     */
+    private final Path file;
+    /**
+     * Every line string that has been started, in the order they are written to the file.
+     */
+    private final List<LineStringWriter> lineStrings = new ArrayList<>();
+
+    /**
+     * Constructor for class GeoJsonPathWriter.
+     * @param file The GeoJson file to write, which is created or overwritten when the writer is closed.
+     */
+    GeoJsonPathWriter(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Method that starts the line string of a drone.
+     * @return LineStringWriter which the coordinates of the drone are written to.
+     */
+    public synchronized LineStringWriter newLineString() {
+        LineStringWriter lineString = new LineStringWriter();
+        lineStrings.add(lineString);
+        return lineString;
+    }
+
+    /**
+     * Method that puts the GeoJson file together from the line strings and deletes their temporary files.
+     * The line strings must not be written to after this.
+     */
+    public synchronized void close() {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            put(channel, buffer, "{\"type\":\"FeatureCollection\",\"features\":[");
+
+            for (int i = 0; i < lineStrings.size(); i++) {
+                LineStringWriter lineString = lineStrings.get(i);
+                lineString.finish();
+
+                put(channel, buffer, (i == 0 ? "" : ",")
+                        + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+                flush(channel, buffer);
+                //If writing the line string failed, it is left empty rather than cut off part way through.
+                if (!lineString.failed) {
+                    try (FileChannel coordinates = FileChannel.open(lineString.tempFile, StandardOpenOption.READ)) {
+                        long size = coordinates.size();
+                        for (long copied = 0; copied < size; ) {
+                            copied += coordinates.transferTo(copied, size - copied, channel);
+                        }
+                    }
+                }
+                if (lineString.tempFile != null) {
+                    Files.deleteIfExists(lineString.tempFile);
+                }
+                put(channel, buffer, "]},\"properties\":{}}");
+            }
+
+            put(channel, buffer, "]}");
+            flush(channel, buffer);
+
+        } catch (IOException e) {
+            System.err.println("An error occurred while writing the GeoJson file " + file + ".");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that puts a string of ASCII characters in a buffer, writing the buffer to the channel whenever it is full.
+     */
+    private static void put(FileChannel channel, ByteBuffer buffer, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+            }
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Method that writes everything in a buffer to the channel and empties the buffer.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * This class writes the coordinates of one drone's line string to its temporary file.
+     * It is only ever used by one drone at a time.
+     */
+    static final class LineStringWriter {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private Path tempFile;
+        private FileChannel channel;
+        private boolean first = true;
+        /**
+         * Whether writing has failed, after which the coordinates are no longer written so the error is only shown once.
+         */
+        private boolean failed;
+
+        private LineStringWriter() {
+            try {
+                tempFile = Files.createTempFile("drone-path", ".json");
+                tempFile.toFile().deleteOnExit();
+                channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Method that adds a position to the end of the line string.
+         * @param lng Longitude of the position.
+         * @param lat Latitude of the position.
+         */
+        public void add(double lng, double lat) {
+
+            if (failed) {
+                return;
+            }
+            try {
+                put(channel, buffer, (first ? "[" : ",[") + Math.round(lng * COORDINATE_SCALE) / COORDINATE_SCALE
+                        + "," + Math.round(lat * COORDINATE_SCALE) / COORDINATE_SCALE + "]");
+                first = false;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Method that writes what is left in the buffer and closes the channel.
+         */
+        private void finish() throws IOException {
+            if (!failed) {
+                flush(channel, buffer);
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private void fail(IOException e) {
+            System.err.println("An error occurred while writing a drone's flightpath.");
+            e.printStackTrace();
+            failed = true;
+        }
+    }
+
+}
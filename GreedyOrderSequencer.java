@@ -0,0 +1,28 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ *
+ * This class is the greedy order sequencer: the drone attempts the most valuable orders first, and does every order
+ * it still has enough moves for.
+ *
+ */
+final class GreedyOrderSequencer implements OrderSequencer {
+
+    /**
+     * Method that returns the orders in descending order of value, which is how they are already sorted.
+     *
+     * @param ordersSortedByValue Linked hash map of every order number to its cost in pence, most valuable first.
+     * @param tourOfOrder Not used, since the greedy sequence does not depend on where the orders are.
+     * @return List of every order number, most valuable first.
+     */
+    @Override
+    public List<String> sequence(Map<String, Integer> ordersSortedByValue, Function<String, List<LongLat>> tourOfOrder) {
+        return new ArrayList<>(ordersSortedByValue.keySet());
+    }
+
+}
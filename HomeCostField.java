@@ -0,0 +1,303 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents the cost of getting back to Appleton Tower from anywhere in the drone confinement area, worked
+ * out once for a map so that it can be looked up in constant time.
+ * The confinement area is split into a grid of square cells one move wide, and for the centre of each cell we store
+ * the length of the shortest route to Appleton Tower that does not go into a NFZ. These lengths come from a single
+ * search backwards from Appleton Tower over the real corners of the NFZ's, and each cell then only has to find the
+ * corner that gives it the shortest route.
+ *
+ * The shortest route around the NFZ's only ever turns at their corners, so these lengths are never more than the
+ * length of any route the drone could fly. This is why the corners of the visibility graph are not used here: they are
+ * moved outward from the NFZ's (see VisibilityGraph.CORNER_OFFSET), so a route through them can be longer than the
+ * drone's own. For the same reason, a line here may touch a NFZ or run along one of its edges, as long as it does not
+ * go into it (see canReach), and the confinement area is not taken into account.
+ *
+ * Any position in a cell is at most half a cell diagonal from its centre, in a straight line that does not cross a NFZ,
+ * so the shortest route from the position is within that of the stored length. Cells that a NFZ edge passes through
+ * (or which have no route at all) are not given a length, since this is not true for them.
+ * Every move covers the default distance and the drone stops within the default distance of Appleton Tower, so the
+ * stored length gives a number of moves the drone can never do better than (see fewestMovesHome). The drone does not
+ * always fly the shortest route, so the field can only rule a way home out, never show that the drone has enough
+ * moves for it.
+ */
+public final class HomeCostField {
+
+    /**
+     * The drone confinement area, which the grid covers.
+     */
+    public static final double MIN_LNG = -3.192473;
+    public static final double MAX_LNG = -3.184319;
+    public static final double MIN_LAT = 55.942617;
+    public static final double MAX_LAT = 55.946233;
+
+    /**
+     * The width and height (in degrees) of a cell of the grid, which is the length of one move.
+     */
+    public static final double CELL_SIZE = LongLat.DEFAULT_DISTANCE;
+
+    /**
+     * The furthest any position in a cell can be from the centre of the cell.
+     */
+    private static final double HALF_CELL_DIAGONAL = CELL_SIZE * Math.sqrt(2) / 2;
+
+    /**
+     * How close (in degrees) a position has to be to a NFZ edge to count as on it, and how small the sine of the angle
+     * between two lines has to be for them to count as in line, so that floating point noise never stops a line that
+     * only touches a NFZ.
+     */
+    private static final double ON_EDGE = 1e-12;
+    private static final double IN_LINE = 1e-9;
+
+    private final int columns;
+    private final int rows;
+    /**
+     * The length of the shortest route to Appleton Tower from the centre of each cell, row by row, or NaN for a cell
+     * without one.
+     */
+    private final double[] distances;
+
+    /**
+     * The edges and shapes of the NFZ's, used to check which lines go into a NFZ.
+     */
+    private final List<Line2D> nfzEdges;
+    private final NfzEdgeIndex nfzEdgeIndex;
+    private final List<Path2D> nfzShapes = new ArrayList<>();
+
+    /**
+     * Constructor for class HomeCostField.
+     * We first leave out every cell that the bounding box of a NFZ edge overlaps. We then find the length of the
+     * shortest route from every NFZ corner (see cornerDistancesTo). For the other cells, the shortest route is either
+     * straight to Appleton Tower, or straight to a NFZ corner and then along the shortest route from that corner.
+     *
+     * @param nfzPolygons List of the NFZ's as polygon objects, whose corners the routes turn at.
+     * @param nfzEdges List of the edges of every NFZ polygon.
+     * @param nfzEdgeIndex Spatial index over the NFZ edges, used to check what the centre of each cell can see.
+     */
+    HomeCostField(List<Polygon> nfzPolygons, List<Line2D> nfzEdges, NfzEdgeIndex nfzEdgeIndex) {
+
+        this.nfzEdges = nfzEdges;
+        this.nfzEdgeIndex = nfzEdgeIndex;
+
+        List<LongLat> corners = new ArrayList<>();
+        for (Polygon polygon : nfzPolygons) {
+            for (List<Point> ring : polygon.coordinates()) {
+                Path2D shape = new Path2D.Double();
+                shape.moveTo(ring.get(0).longitude(), ring.get(0).latitude());
+                //The last point of a ring is the same as the first, so it is not a separate corner.
+                for (int i = 0; i < ring.size() - 1; i++) {
+                    corners.add(new LongLat(ring.get(i).longitude(), ring.get(i).latitude()));
+                    shape.lineTo(ring.get(i + 1).longitude(), ring.get(i + 1).latitude());
+                }
+                shape.closePath();
+                nfzShapes.add(shape);
+            }
+        }
+
+        columns = (int) Math.ceil((MAX_LNG - MIN_LNG) / CELL_SIZE);
+        rows = (int) Math.ceil((MAX_LAT - MIN_LAT) / CELL_SIZE);
+        distances = new double[columns * rows];
+
+        boolean[] crossedByNfzEdge = new boolean[columns * rows];
+        for (Line2D edge : nfzEdges) {
+            int firstColumn = Math.max(0, column(Math.min(edge.getX1(), edge.getX2())));
+            int lastColumn = Math.min(columns - 1, column(Math.max(edge.getX1(), edge.getX2())));
+            int firstRow = Math.max(0, row(Math.min(edge.getY1(), edge.getY2())));
+            int lastRow = Math.min(rows - 1, row(Math.max(edge.getY1(), edge.getY2())));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    crossedByNfzEdge[row * columns + column] = true;
+                }
+            }
+        }
+
+        LongLat home = Drone.appletonTower;
+        double[] cornerDistances = cornerDistancesTo(corners, home);
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                if (crossedByNfzEdge[cell]) {
+                    distances[cell] = Double.NaN;
+                    continue;
+                }
+                LongLat centre = new LongLat(MIN_LNG + (column + 0.5) * CELL_SIZE, MIN_LAT + (row + 0.5) * CELL_SIZE);
+                double distance = Double.POSITIVE_INFINITY;
+                if (canReach(centre, home)) {
+                    distance = centre.distanceTo(home);
+                } else {
+                    for (int i = 0; i < corners.size(); i++) {
+                        double throughCorner = centre.distanceTo(corners.get(i)) + cornerDistances[i];
+                        if (throughCorner < distance && canReach(centre, corners.get(i))) {
+                            distance = throughCorner;
+                        }
+                    }
+                }
+                distances[cell] = Double.isInfinite(distance) ? Double.NaN : distance;
+            }
+        }
+    }
+
+    /**
+     * Method that finds the length of the shortest route from every NFZ corner to a position, with Dijkstra's algorithm.
+     * Every corner may be joined to every other, so rather than a priority queue we look for the closest corner not yet
+     * done each time, and only check whether two corners can reach each other once the line between them would make a
+     * route shorter.
+     *
+     * @param corners List of the NFZ corners.
+     * @param target LongLat object of the position the routes go to.
+     * @return Array of the length of the shortest route from each corner, which is infinite for a corner without one.
+     */
+    private double[] cornerDistancesTo(List<LongLat> corners, LongLat target) {
+
+        int cornerCount = corners.size();
+        double[] cornerDistances = new double[cornerCount];
+        boolean[] done = new boolean[cornerCount];
+        for (int i = 0; i < cornerCount; i++) {
+            cornerDistances[i] = canReach(corners.get(i), target)
+                    ? corners.get(i).distanceTo(target)
+                    : Double.POSITIVE_INFINITY;
+        }
+
+        for (int step = 0; step < cornerCount; step++) {
+            int closest = -1;
+            for (int i = 0; i < cornerCount; i++) {
+                if (!done[i] && (closest < 0 || cornerDistances[i] < cornerDistances[closest])) {
+                    closest = i;
+                }
+            }
+            if (Double.isInfinite(cornerDistances[closest])) {
+                break;
+            }
+            done[closest] = true;
+            for (int i = 0; i < cornerCount; i++) {
+                double distance = cornerDistances[closest] + corners.get(closest).distanceTo(corners.get(i));
+                if (!done[i] && distance < cornerDistances[i] && canReach(corners.get(closest), corners.get(i))) {
+                    cornerDistances[i] = distance;
+                }
+            }
+        }
+        return cornerDistances;
+    }
+
+    /**
+     * Method that checks whether the straight line between two positions stays out of every NFZ.
+     * Unlike a drone move, the line may touch a NFZ or run along one of its edges, which is what the shortest route does
+     * at every corner it turns at. So a line that meets a NFZ edge is only stopped if it crosses the edge (rather than
+     * just touching it), or if its middle is inside a NFZ (which is the case for a line from one corner of a NFZ
+     * straight across it to another).
+     *
+     * @param start LongLat object of the start of the line.
+     * @param end LongLat object of the end of the line.
+     * @return Boolean value true if the line does not go into any NFZ.
+     */
+    private boolean canReach(LongLat start, LongLat end) {
+
+        if (!nfzEdgeIndex.intersectsAnyEdge(start.lng, start.lat, end.lng, end.lat)) {
+            return true;
+        }
+        for (Line2D edge : nfzEdges) {
+            if (crosses(start, end, edge)) {
+                return false;
+            }
+        }
+
+        double middleLng = (start.lng + end.lng) / 2;
+        double middleLat = (start.lat + end.lat) / 2;
+        for (Path2D shape : nfzShapes) {
+            if (shape.contains(middleLng, middleLat)) {
+                for (Line2D edge : nfzEdges) {
+                    if (edge.ptSegDist(middleLng, middleLat) < ON_EDGE) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that checks whether a line crosses a NFZ edge, with each of them having an end on either side of the other.
+     * A line that only touches the edge, or is in line with it, does not cross it.
+     *
+     * @param start LongLat object of the start of the line.
+     * @param end LongLat object of the end of the line.
+     * @param edge The NFZ edge.
+     * @return Boolean value true if the line crosses the edge.
+     */
+    private static boolean crosses(LongLat start, LongLat end, Line2D edge) {
+        return side(edge.getX1(), edge.getY1(), edge.getX2(), edge.getY2(), start.lng, start.lat)
+                * side(edge.getX1(), edge.getY1(), edge.getX2(), edge.getY2(), end.lng, end.lat) < 0
+                && side(start.lng, start.lat, end.lng, end.lat, edge.getX1(), edge.getY1())
+                * side(start.lng, start.lat, end.lng, end.lat, edge.getX2(), edge.getY2()) < 0;
+    }
+
+    /**
+     * Method that finds which side of the line from one point to another a third point is on.
+     * @return 1 if it is to the left, -1 if it is to the right, and 0 if it is in line with it.
+     */
+    private static int side(double fromX, double fromY, double toX, double toY, double x, double y) {
+        double lineX = toX - fromX;
+        double lineY = toY - fromY;
+        double pointX = x - fromX;
+        double pointY = y - fromY;
+        double lengths = Math.hypot(lineX, lineY) * Math.hypot(pointX, pointY);
+        if (lengths == 0) {
+            return 0;
+        }
+        double sine = (lineX * pointY - lineY * pointX) / lengths;
+        return Math.abs(sine) < IN_LINE ? 0 : (int) Math.signum(sine);
+    }
+
+    /**
+     * Method that finds the fewest moves the drone could possibly make to get from a position to Appleton Tower.
+     * Every route home from the position is at least the stored length of its cell less half a cell diagonal, and the
+     * drone covers the default distance per move and stops within the default distance of Appleton Tower.
+     *
+     * @param lng Longitude of the position.
+     * @param lat Latitude of the position.
+     * @return The fewest moves home, or -1 if the position is not in a cell with a stored length.
+     */
+    public int fewestMovesHome(double lng, double lat) {
+        double distance = distance(lng, lat);
+        if (Double.isNaN(distance)) {
+            return -1;
+        }
+        //The small amount taken off keeps floating point noise from rounding the number of moves up.
+        return Math.max(0, (int) Math.ceil((distance - HALF_CELL_DIAGONAL) / LongLat.DEFAULT_DISTANCE - 1 - 1e-9));
+    }
+
+    /**
+     * Method that looks up the stored length of the cell of a position.
+     * @param lng Longitude of the position.
+     * @param lat Latitude of the position.
+     * @return The length of the shortest route home from the centre of the cell, or NaN if the position is outside the
+     * grid or its cell has no stored length.
+     */
+    private double distance(double lng, double lat) {
+        int column = column(lng);
+        int row = row(lat);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return Double.NaN;
+        }
+        return distances[row * columns + column];
+    }
+
+    private static int column(double lng) {
+        return (int) Math.floor((lng - MIN_LNG) / CELL_SIZE);
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor((lat - MIN_LAT) / CELL_SIZE);
+    }
+}
@@ -0,0 +1,62 @@
+package uk.ac.ed.inf;
+
+/**
+ *
+ * This interface represents a way of checking whether a line segment intersects any of a run of segments stored in
+ * EdgeArrays. It is the primitive that every route check (and so every caller of Buildings.checkDirectRoute) ends up in.
+ *
+ * Every implementation gives exactly the same answer as testing the segments one at a time with
+ * Line2D.linesIntersect, touching and collinear segments included, so the drone flies the same moves whichever is used.
+ *
+ * The kernel that is used is chosen once, when the class is first used:
+ *      The Vector API kernel is used if the ilp.vectorKernel system property is set to true, the program was built
+ *      with the optional vector source set (vector/VectorIntersectionKernel.java), and the jdk.incubator.vector module
+ *      is there (the program is run with --add-modules jdk.incubator.vector).
+ *      Otherwise, the scalar kernel is used.
+ * The scalar kernel is the default, since the grid of NfzEdgeIndex leaves only a few edges in each cell, which is
+ * too few to fill the lanes of a vector, and the scalar kernel was found to be as fast or faster on such runs.
+ *
+ */
+interface IntersectionKernel {
+
+    /**
+     * The kernel used for every route check.
+     */
+    IntersectionKernel DEFAULT = choose();
+
+    /**
+     * Method that checks whether a line segment intersects any segment in a run of the edge arrays.
+     *
+     * @param edges EdgeArrays object which holds the segments.
+     * @param from Index of the first segment of the run.
+     * @param to Index one after the last segment of the run.
+     * @param ax Longitude of the start of the line segment.
+     * @param ay Latitude of the start of the line segment.
+     * @param bx Longitude of the end of the line segment.
+     * @param by Latitude of the end of the line segment.
+     * @return Boolean value true if the line segment intersects at least one segment of the run.
+     */
+    boolean anyIntersects(EdgeArrays edges, int from, int to, double ax, double ay, double bx, double by);
+
+    /**
+     * Method that chooses the kernel to use.
+     * The Vector API kernel is loaded by name, so that the rest of the code compiles without it and nothing from the
+     * jdk.incubator.vector module is touched when the module is not there.
+     *
+     * @return The Vector API kernel if it can be used, or else the scalar kernel.
+     */
+    private static IntersectionKernel choose() {
+
+        boolean wanted = Boolean.parseBoolean(System.getProperty("ilp.vectorKernel", "false"));
+        if (wanted && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (IntersectionKernel) Class.forName("uk.ac.ed.inf.VectorIntersectionKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("The Vector API kernel could not be loaded (it is only there when the vector source "
+                        + "set is built), so the scalar kernel is used.");
+            }
+        }
+        return new ScalarIntersectionKernel();
+    }
+}
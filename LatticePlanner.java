@@ -0,0 +1,175 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * This class plans the moves of one leg with the A* search algorithm, over exactly the moves the drone can make: a
+ * fly of 0.00015 degrees at one of the 36 angles that are a multiple of 10.
+ * Each position reached is a node, and its neighbours are the 36 positions one move away which the move to does not
+ * cross a NFZ (checked with Buildings.checkDirectRoute, the same test the drone uses for every move).
+ * The goal is any position within the default distance of the target, which is when the drone counts as being there.
+ *
+ * The straight-line distance still left to cover after one last move, divided by the length of a move, is used as the
+ * estimate of the moves left. No move gets the drone closer to the target than its length, so this is never more than
+ * the real number of moves left, and A* gives the fewest moves.
+ * The drone can reach almost any position by combining moves at different angles, so positions are rounded to a grid
+ * (see POSITION_QUANTUM) and only the first position reached in each cell is expanded.
+ * The search stops after MAX_EXPANSIONS positions, and then no plan is returned so that the drone can fall back on
+ * steering toward the target.
+ *
+ * The positions are worked out by adding the moves of the MotionKernel class in the same order as Drone.fly, so flying
+ * the planned moves takes the drone through exactly the positions that were checked.
+ */
+public final class LatticePlanner {
+
+    /**
+     * The size (in degrees) of the grid cells positions are rounded to for the closed set, which is a fifth of a move
+     * by default and can be changed with the system property ilp.plannerQuantum.
+     * Two positions in the same cell are treated as the same position, so a smaller cell gives plans closer to the
+     * fewest moves but makes the search look at more positions.
+     */
+    public static final double POSITION_QUANTUM = Double.parseDouble(
+            System.getProperty("ilp.plannerQuantum", String.valueOf(LongLat.DEFAULT_DISTANCE / 5)));
+
+    /**
+     * The most positions the search expands for one leg before it gives up, which can be changed with the system
+     * property ilp.plannerExpansions.
+     */
+    public static final int MAX_EXPANSIONS = Integer.getInteger("ilp.plannerExpansions", 20000);
+
+    /**
+     * This class only holds static methods, so it is never instantiated.
+     */
+    private LatticePlanner() {
+    }
+
+    /**
+     *
+     * Method that finds the fewest moves that take the drone from a position to within the default distance of a target,
+     * without crossing a NFZ.
+     * The nodes found so far are kept in arrays, with the move that reached each one and the node it was reached from,
+     * and the queue holds the estimated total moves, the moves so far and the index of each node still to expand.
+     * When two nodes have the same estimate, the one with more moves so far (the one closer to the target) is expanded
+     * first, so on open ground the search goes straight to the target.
+     * Hovering is not part of the plan.
+     *
+     * @param buildings Buildings object which contains the NFZ's that the moves must not cross.
+     * @param startLng Longitude of the position the leg starts from.
+     * @param startLat Latitude of the position the leg starts from.
+     * @param targetLng Longitude of the target of the leg.
+     * @param targetLat Latitude of the target of the leg.
+     * @return Array of the angles of the moves in order, which is empty if the start is already close to the target, or
+     * null if no plan was found within MAX_EXPANSIONS positions.
+     */
+    public static int[] plan(Buildings buildings, double startLng, double startLat, double targetLng, double targetLat) {
+
+        int capacity = 1024;
+        double[] lngs = new double[capacity];
+        double[] lats = new double[capacity];
+        int[] parents = new int[capacity];
+        int[] angles = new int[capacity];
+        int nodeCount = 1;
+        lngs[0] = startLng;
+        lats[0] = startLat;
+        parents[0] = -1;
+
+        Map<Long, Integer> fewestMovesToCell = new HashMap<>();
+        Set<Long> expandedCells = new HashSet<>();
+        fewestMovesToCell.put(cellKey(startLng, startLat, startLng, startLat), 0);
+
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0])
+                : Double.compare(b[1], a[1]));
+        queue.add(new double[]{estimate(startLng, startLat, targetLng, targetLat), 0, 0});
+
+        int expansions = 0;
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int node = (int) entry[2];
+            int moves = (int) entry[1];
+            double lng = lngs[node];
+            double lat = lats[node];
+
+            if (LongLat.distance(lng, lat, targetLng, targetLat) <= LongLat.DEFAULT_DISTANCE) {
+                int[] plan = new int[moves];
+                for (int n = node; parents[n] != -1; n = parents[n]) {
+                    plan[--moves] = angles[n];
+                }
+                return plan;
+            }
+            if (!expandedCells.add(cellKey(lng, lat, startLng, startLat))) {
+                continue;
+            }
+            if (++expansions > MAX_EXPANSIONS) {
+                return null;
+            }
+
+            for (int i = 0; i < MotionKernel.NUMBER_OF_ANGLES; i++) {
+                int angle = i * 10;
+                double nextLng = lng + MotionKernel.lngDelta(angle);
+                double nextLat = lat + MotionKernel.latDelta(angle);
+                long key = cellKey(nextLng, nextLat, startLng, startLat);
+
+                Integer fewestMoves = fewestMovesToCell.get(key);
+                if ((fewestMoves != null && fewestMoves <= moves + 1) || expandedCells.contains(key)) {
+                    continue;
+                }
+                if (!buildings.checkDirectRoute(lng, lat, nextLng, nextLat)) {
+                    continue;
+                }
+
+                if (nodeCount == capacity) {
+                    capacity *= 2;
+                    lngs = Arrays.copyOf(lngs, capacity);
+                    lats = Arrays.copyOf(lats, capacity);
+                    parents = Arrays.copyOf(parents, capacity);
+                    angles = Arrays.copyOf(angles, capacity);
+                }
+                lngs[nodeCount] = nextLng;
+                lats[nodeCount] = nextLat;
+                parents[nodeCount] = node;
+                angles[nodeCount] = angle;
+                fewestMovesToCell.put(key, moves + 1);
+                queue.add(new double[]{moves + 1 + estimate(nextLng, nextLat, targetLng, targetLat), moves + 1, nodeCount});
+                nodeCount++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that estimates the number of moves left from a position to the target: the distance left to cover once
+     * the drone is within the default distance of the target, in moves.
+     * This is never more than the real number of moves left, and it goes down by at most 1 with each move.
+     *
+     * @param lng Longitude of the position.
+     * @param lat Latitude of the position.
+     * @param targetLng Longitude of the target.
+     * @param targetLat Latitude of the target.
+     * @return Estimated number of moves left, which need not be a whole number.
+     */
+    private static double estimate(double lng, double lat, double targetLng, double targetLat) {
+        return Math.max(0, LongLat.distance(lng, lat, targetLng, targetLat) - LongLat.DEFAULT_DISTANCE)
+                / LongLat.DEFAULT_DISTANCE;
+    }
+
+    /**
+     * Method that finds the grid cell of a position, measured from the start of the leg so that the start is always in
+     * the middle of its cell.
+     *
+     * @param lng Longitude of the position.
+     * @param lat Latitude of the position.
+     * @param startLng Longitude of the start of the leg.
+     * @param startLat Latitude of the start of the leg.
+     * @return The column and row of the cell packed into one number.
+     */
+    private static long cellKey(double lng, double lat, double startLng, double startLat) {
+        long column = Math.round((lng - startLng) / POSITION_QUANTUM);
+        long row = Math.round((lat - startLat) / POSITION_QUANTUM);
+        return (column << 32) ^ (row & 0xffffffffL);
+    }
+}
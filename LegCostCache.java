@@ -0,0 +1,188 @@
+package uk.ac.ed.inf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents a cache of the cost of flying legs that have already been flown in a dry run.
+ * A leg is the flight from one position to one destination (and the hover there, except when returning to Appleton
+ * Tower at the end of the day).
+ * The same legs are flown many times while choosing the order of shops and checking whether an order fits in the
+ * battery, so we store the number of moves each leg took and where the drone ended up.
+ * Positions are converted to fixed-point numbers, so that positions that only differ by floating point noise share an
+ * entry and keys can be compared exactly.
+ * The cache holds at most a fixed number of legs, and when it is full the least recently used leg is removed.
+ */
+public final class LegCostCache {
+
+    /**
+     * The number of legs the cache holds by default, which can be changed with the system property ilp.legCacheSize.
+     */
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("ilp.legCacheSize", 4096);
+
+    /**
+     * This class represents the cost of flying a leg.
+     */
+    public static final class LegCost {
+
+        /**
+         * The number of moves (fly and hover) the leg took.
+         */
+        public final int moves;
+        /**
+         * The position of the drone at the end of the leg.
+         */
+        public final LongLat endPosition;
+        /**
+         * The angle of every move of the leg (the junk value -999 for a hover), so that a dry run which takes the leg
+         * from the cache can still plan its moves.
+         */
+        private final short[] angles;
+
+        /**
+         * Constructor for class LegCost.
+         * @param endPosition The position of the drone at the end of the leg.
+         * @param angles The angle of every move of the leg, which must not be changed afterwards.
+         */
+        LegCost(LongLat endPosition, short[] angles) {
+            this.moves = angles.length;
+            this.endPosition = endPosition;
+            this.angles = angles;
+        }
+
+        /**
+         * Getter for the angle of a move of the leg.
+         * @param move Index of the move in the leg.
+         * @return Angle of the move, or the junk value -999 for a hover.
+         */
+        public int getAngle(int move) {
+            return angles[move];
+        }
+    }
+
+    /**
+     * This class represents the key of a leg: its start and destination as fixed-point coordinates, and whether the
+     * drone hovers at the end.
+     * A fixed-point unit is far smaller than a drone move, so two legs that share a key are flown in exactly the same way.
+     */
+    private static final class LegKey {
+
+        private final long startLng;
+        private final long startLat;
+        private final long destinationLng;
+        private final long destinationLat;
+        private final boolean hoverAtEnd;
+
+        /**
+         * Constructor for class LegKey.
+         * @param start Position that the leg starts from.
+         * @param destination Position that the leg flies to.
+         * @param hoverAtEnd Whether the drone hovers once it reaches the destination.
+         */
+        LegKey(LongLat start, LongLat destination, boolean hoverAtEnd) {
+            this.startLng = MotionKernel.toFixedPoint(start.lng);
+            this.startLat = MotionKernel.toFixedPoint(start.lat);
+            this.destinationLng = MotionKernel.toFixedPoint(destination.lng);
+            this.destinationLat = MotionKernel.toFixedPoint(destination.lat);
+            this.hoverAtEnd = hoverAtEnd;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof LegKey)) {
+                return false;
+            }
+            LegKey key = (LegKey) other;
+            return startLng == key.startLng && startLat == key.startLat && destinationLng == key.destinationLng
+                    && destinationLat == key.destinationLat && hoverAtEnd == key.hoverAtEnd;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = startLng;
+            hash = 31 * hash + startLat;
+            hash = 31 * hash + destinationLng;
+            hash = 31 * hash + destinationLat;
+            return Long.hashCode(hash) * 2 + (hoverAtEnd ? 1 : 0);
+        }
+    }
+
+    /**
+     * Hash map from the key of a leg to its cost, kept in order of use so that the least recently used leg can be
+     * removed once the cache is full.
+     */
+    private final Map<LegKey, LegCost> legCosts;
+
+    /**
+     * The number of lookups that found a leg and that did not, for reporting how useful the cache is.
+     */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor for class LegCostCache.
+     * @param capacity The largest number of legs the cache holds.
+     */
+    LegCostCache(int capacity) {
+        legCosts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LegKey, LegCost> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Getter for the cost of a leg that has already been flown.
+     *
+     * @param start Position that the leg starts from.
+     * @param destination Position that the leg flies to.
+     * @param hoverAtEnd Whether the drone hovers once it reaches the destination.
+     * @return LegCost object of the leg, or null if it has not been flown yet (or has been removed).
+     */
+    public synchronized LegCost get(LongLat start, LongLat destination, boolean hoverAtEnd) {
+        LegCost legCost = legCosts.get(new LegKey(start, destination, hoverAtEnd));
+        if (legCost == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return legCost;
+    }
+
+    /**
+     * Method that stores the cost and moves of a leg that has just been flown.
+     *
+     * @param start Position that the leg started from.
+     * @param destination Position that the leg flew to.
+     * @param hoverAtEnd Whether the drone hovered once it reached the destination.
+     * @param legCost LegCost object with the moves and the end position of the leg.
+     */
+    public synchronized void put(LongLat start, LongLat destination, boolean hoverAtEnd, LegCost legCost) {
+        legCosts.put(new LegKey(start, destination, hoverAtEnd), legCost);
+    }
+
+    /**
+     * Method that removes every leg from the cache, for example so that a benchmark measures legs being flown rather
+     * than being looked up.
+     */
+    public synchronized void clear() {
+        legCosts.clear();
+    }
+
+    /**
+     * Getter for the number of lookups that found a leg.
+     * @return Number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter for the number of lookups that did not find a leg.
+     * @return Number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -38,6 +38,11 @@ public final class LongLat {
      */
     public static final int JUNK_VALUE = -999;
 
+    /**
+     * The angle returned by angleToDodgePotentialNfz when every angle would take the drone into a NFZ.
+     */
+    public static final int NO_ANGLE = -1;
+
     /**
      * Longitude of the position of the drone (-3).
      */
@@ -70,8 +75,22 @@ public final class LongLat {
      * @return distance between the two points as double.
      */
     public final double distanceTo(LongLat point) {
-        double x = lng - point.lng;
-        double y = lat - point.lat;
+        return distance(lng, lat, point.lng, point.lat);
+    }
+
+    /**
+     * Method that calculates the distance between two positions given by their coordinates, in the same way as
+     * distanceTo, without needing LongLat objects.
+     *
+     * @param lng1 Longitude of the first position.
+     * @param lat1 Latitude of the first position.
+     * @param lng2 Longitude of the second position.
+     * @param lat2 Latitude of the second position.
+     * @return distance between the two positions as double.
+     */
+    public static double distance(double lng1, double lat1, double lng2, double lat2) {
+        double x = lng1 - lng2;
+        double y = lat1 - lat2;
         return Math.sqrt((x * x) + (y * y));
     }
 
@@ -91,56 +110,20 @@ public final class LongLat {
     /**
      * Method that calculates the new position (coordinates) of a LongLat object after either flying (angles between 0
      * and 350 inclusive) or hovering (angle of junk value -999).
+     * The change in longitude and latitude of each angle is precomputed in the MotionKernel class.
      *
      * @param angle The angle the drone is moving towards where we follow the convention on the document.
      * @return LongLat object which is the new coordinates of the location after moving towards the given angle.
      */
     public final LongLat nextPosition(int angle) {
-        //Switch statement for "regular" angles for: east, north , west and south. Also includes angle for hovering.
-        switch (angle) {
-            //drone is hovering i.e. no changes to latitude/longitude.
-            case JUNK_VALUE:
-                return this;
-            //drone will fly northward i.e. latitude increases.
-            case NORTH:
-                return new LongLat(this.lng, this.lat + DEFAULT_DISTANCE);
-            //drone will fly westward i.e. longitude decreases.
-            case WEST:
-                return new LongLat(this.lng - DEFAULT_DISTANCE, this.lat);
-            //drone will fly southward i.e. latitude decreases.
-            case SOUTH:
-                return new LongLat(this.lng, this.lat - DEFAULT_DISTANCE);
-            //drone will fly eastward i.e. longitude increases.
-            case EAST:
-                return new LongLat(this.lng + DEFAULT_DISTANCE, this.lat);
+        if (Metrics.ENABLED) {
+            Metrics.NEXT_POSITION_EVALUATIONS.increment();
         }
-
-        double v = Math.sin(Math.toRadians(angle % 90)) * DEFAULT_DISTANCE;
-
-        //angles between 0 and 90 would be increasing longitude and increasing latitude.
-        final double latDist2 = Math.sqrt((DEFAULT_DISTANCE * DEFAULT_DISTANCE) - (v * v));
-        if (angle < 90) {
-            return new LongLat(this.lng + latDist2, this.lat + v);
-        }
-
-        //angles between 90 and 180 would be increasing latitude and decreasing longitude.
-        else if (angle < 180) {
-            double latDist = Math.sin(Math.toRadians(180 - angle)) * DEFAULT_DISTANCE;
-            double longDist = Math.sqrt((DEFAULT_DISTANCE * DEFAULT_DISTANCE) - (latDist * latDist));
-            return new LongLat(this.lng - longDist, this.lat + latDist);
-        }
-
-        //angles between 180 and 270 would be decreasing longitude and decreasing latitude.
-        else if (angle < 270) {
-            return new LongLat(this.lng - latDist2, this.lat - v);
-        }
-
-        //angles between 270 and 360 would be decreasing latitude and increasing longitude.
-        else{
-            double latDist = Math.sin(Math.toRadians(360 - angle)) * DEFAULT_DISTANCE;
-            double longDist = Math.sqrt((DEFAULT_DISTANCE * DEFAULT_DISTANCE) - (latDist * latDist));
-            return new LongLat(this.lng + longDist, this.lat - latDist);
+        //drone is hovering i.e. no changes to latitude/longitude.
+        if (angle == JUNK_VALUE) {
+            return this;
         }
+        return new LongLat(this.lng + MotionKernel.lngDelta(angle), this.lat + MotionKernel.latDelta(angle));
     }
 
     /**
@@ -153,13 +136,23 @@ public final class LongLat {
      * @return Integer value of the best angle to take to travel to destination.
      */
     public final int bestAngle(LongLat destination){
+        return bestAngle(lng, lat, destination.lng, destination.lat);
+    }
 
-        int bestAngle = 0;
+    /**
+     *
+     * Method that calculates the best angle (rounded to the nearest 10) to take to travel from one position to another,
+     * in the same way as the bestAngle method above, without needing LongLat objects.
+     *
+     * @param lngStart Longitude of the position we are travelling from.
+     * @param latStart Latitude of the position we are travelling from.
+     * @param lngEnd Longitude of the position we are travelling to.
+     * @param latEnd Latitude of the position we are travelling to.
+     * @return Integer value of the best angle to take to travel to the destination.
+     */
+    public static int bestAngle(double lngStart, double latStart, double lngEnd, double latEnd){
 
-        double lngStart = lng;
-        double latStart = lat;
-        double lngEnd = destination.lng;
-        double latEnd = destination.lat;
+        int bestAngle = 0;
 
         double lngDist = Math.abs(lngStart - lngEnd);
         double latDist = Math.abs(latStart - latEnd);
@@ -232,40 +225,71 @@ public final class LongLat {
      * a NFZ.
      * This method provides a solution if such a situation was to arise, and calculates an adjusted angle that
      * will dodge the NFZ if taken.
-     * This recursively adds or subtracts 10 to the angle (we choose the one that keeps us outside the NFZ, if they both
-     * keep us outside, we choose the one that is closer to the destination) until we find an angle that keeps us
-     * outside any NFZ.
+     * This tries adding and subtracting 10 to the angle, then 20, and so on up to 180 (if they both keep us outside,
+     * we choose the one that is closer to the destination) until we find an angle that keeps us outside any NFZ.
+     * Widening the search in both directions at once means we never swing back and forth between two blocked angles.
      *
      * @param buildings Buildings object which contains all the information about the no-fly-zones and enables the use
      *                of the checkDirectRoute method which checks for no-fly-zones in the next move of the adjusted angle.
      * @param bestAngle The integer value of the first best angle calculated where rounding it to the nearest 10 could've
      *                  caused the unexpected visit to NFZ.
      * @param destination LongLat object of the final destination that we are aiming to go to. This is relevant here to
-     *                    help decide whether we should adjust the angle up 10 or down 10 degrees. We pick the one that
+     *                    help decide whether we should adjust the angle up or down. We pick the one that
      *                    gets us closer to the destination.
-     * @return Integer angle that is adjusted so that the next position will be outside of any NFZ.
+     * @return Integer angle that is adjusted so that the next position will be outside of any NFZ, or NO_ANGLE if no
+     * angle does.
      */
     public final int angleToDodgePotentialNfz (Buildings buildings, int bestAngle , LongLat destination){
+        return angleToDodgePotentialNfz(buildings, lng, lat, bestAngle, destination.lng, destination.lat);
+    }
+
+    /**
+     *
+     * Method that calculates an adjusted angle that will dodge a NFZ, in the same way as the angleToDodgePotentialNfz
+     * method above, without needing LongLat objects.
+     * The next position at each angle is found from the precomputed moves in the MotionKernel class.
+     *
+     * @param buildings Buildings object which contains all the information about the no-fly-zones.
+     * @param lng Longitude of the position the drone is moving from.
+     * @param lat Latitude of the position the drone is moving from.
+     * @param bestAngle The integer value of the first best angle calculated.
+     * @param destinationLng Longitude of the final destination that we are aiming to go to.
+     * @param destinationLat Latitude of the final destination that we are aiming to go to.
+     * @return Integer angle that is adjusted so that the next position will be outside of any NFZ, or NO_ANGLE if no
+     * angle does.
+     */
+    public static int angleToDodgePotentialNfz (Buildings buildings, double lng, double lat, int bestAngle,
+                                                double destinationLng, double destinationLat){
 
-        //Angle rounding to 10 causing unexpected journey through nfz so we check for + and - 10
-        int potentialAdjustedAngle1 = (bestAngle + 10) % 360;
-        int potentialAdjustedAngle2 = (bestAngle - 10) % 360;
+        if (Metrics.ENABLED) {
+            Metrics.NEXT_POSITION_EVALUATIONS.increment();
+        }
+        if (buildings.checkDirectRoute(lng, lat, lng + MotionKernel.lngDelta(bestAngle), lat + MotionKernel.latDelta(bestAngle))){
+            return bestAngle;
+        }
 
-        LongLat potentialNextPosition = (nextPosition(bestAngle));
-        LongLat potentialNextAdjustedPosition1 = (nextPosition(potentialAdjustedAngle1));
-        LongLat potentialNextAdjustedPosition2 = (nextPosition(potentialAdjustedAngle2));
+        //Angle rounding to 10 causing unexpected journey through nfz so we check for + and - 10, then + and - 20, etc.
+        for (int adjustment = 10; adjustment <= 180; adjustment += 10){
+
+            int potentialAdjustedAngle1 = (bestAngle + adjustment) % 360;
+            int potentialAdjustedAngle2 = (bestAngle - adjustment + 360) % 360;
+            if (Metrics.ENABLED) {
+                Metrics.NEXT_POSITION_EVALUATIONS.add(2);
+            }
 
-        double distanceOne = nextPosition(potentialAdjustedAngle1).distanceTo(destination);
-        double distanceTwo = nextPosition(potentialAdjustedAngle2).distanceTo(destination);
+            double potentialNextLng1 = lng + MotionKernel.lngDelta(potentialAdjustedAngle1);
+            double potentialNextLat1 = lat + MotionKernel.latDelta(potentialAdjustedAngle1);
+            double potentialNextLng2 = lng + MotionKernel.lngDelta(potentialAdjustedAngle2);
+            double potentialNextLat2 = lat + MotionKernel.latDelta(potentialAdjustedAngle2);
 
-        boolean potentialAdjustedAngle1Valid = buildings.checkDirectRoute(this, potentialNextAdjustedPosition1);
-        boolean potentialAdjustedAngle2Valid = buildings.checkDirectRoute(this, potentialNextAdjustedPosition2);
+            boolean potentialAdjustedAngle1Valid = buildings.checkDirectRoute(lng, lat, potentialNextLng1, potentialNextLat1);
+            boolean potentialAdjustedAngle2Valid = buildings.checkDirectRoute(lng, lat, potentialNextLng2, potentialNextLat2);
 
-        if (!buildings.checkDirectRoute(this, potentialNextPosition)){
             if (potentialAdjustedAngle1Valid && potentialAdjustedAngle2Valid){
 
                 //Both adjusted angles do not intersect with NFZ.
-                if (distanceOne < distanceTwo){
+                if (distance(potentialNextLng1, potentialNextLat1, destinationLng, destinationLat)
+                        < distance(potentialNextLng2, potentialNextLat2, destinationLng, destinationLat)){
                     return potentialAdjustedAngle1;
                 } else return potentialAdjustedAngle2;
 
@@ -274,13 +298,10 @@ public final class LongLat {
                 return potentialAdjustedAngle1;
             } else if (potentialAdjustedAngle2Valid){
                 return potentialAdjustedAngle2;
-
-            //Both adjusted angles intersects with NFZ.
-            } else if (distanceOne < distanceTwo){
-                return angleToDodgePotentialNfz(buildings, potentialAdjustedAngle1, destination);
-            } else return angleToDodgePotentialNfz(buildings, potentialAdjustedAngle2, destination);
-        } else return bestAngle;
-
+            }
+        }
+        //Every angle goes into a NFZ, so there is no move that keeps the drone outside of them.
+        return NO_ANGLE;
     }
 }
 
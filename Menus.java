@@ -16,6 +16,8 @@ import java.util.*;
  * Once a menus object is created, we will have all the relevant information about every shop.
  * Since the information about the menus of shops will not change during execution, we only need to create one menus
  * object throughout delivering orders for the day.
+ * A menus object cannot be changed once it is created, so it can be shared by any number of days and drones planning
+ * at the same time.
  */
 public final class Menus {
 
@@ -36,22 +38,32 @@ public final class Menus {
     public static final HttpClient client = HttpClient.newHttpClient();
     /**
      * Hash Map that maps the name of an item to its price in pence.
+     * This belongs to each menus object, so that menus loaded for different days never mix, and cannot be changed.
      */
-    public static final Map<String, Integer> itemToPrice = new HashMap<>();
+    public final Map<String, Integer> itemToPrice;
     /**
-     * Hash map that maps the name of an item to the name of the shop that it is being sold in.
+     * Hash map that maps the name of an item to the name of the shop that it is being sold in, which cannot be changed.
      */
-    public static final Map<String, String> itemToShop = new HashMap<>();
+    public final Map<String, String> itemToShop;
     /**
      * Hash map that maps the name of a shop to its W3W address which is a variable-length string of at most 18 characters.
+     * This cannot be changed.
      */
-    public static final Map<String, String[]> shopToWords = new HashMap<>();
+    public final Map<String, String[]> shopToWords;
 
     /**
      * Web port is needed to retrieve the information from the web server.
+     * This is null if the menus were not retrieved from the web server.
      */
     public final String webPort;
 
+    /**
+     * Hash map that maps the name of a shop to its location as a LongLat object.
+     * This is only built the first time it is needed, since the shops' locations do not change during the day, and
+     * cannot be changed once it is built.
+     */
+    private Map<String, LongLat> shopsToLongLat;
+
     /**
      * Constructor for class Menus.
      * We first get all the information we need from the web server.
@@ -64,7 +76,59 @@ public final class Menus {
      * @param webPort     The port where the web server is running.
      */
     Menus(String webPort) {
+        this(webPort, getShopDetails(webPort), null);
+    }
+
+    /**
+     * Constructor for class Menus from shops that we already have, with their W3W addresses already resolved, rather
+     * than ones from the web server.
+     * This lets us create menus that are not on the web server, such as the ones used for benchmarks.
+     *
+     * @param shopDetailsList List of every shop with its name, W3W address and menu.
+     * @param shopsToLongLat Hash map that maps the name of every shop to its location as a LongLat object.
+     */
+    Menus(List<ShopDetails> shopDetailsList, Map<String, LongLat> shopsToLongLat) {
+        this(null, shopDetailsList, Collections.unmodifiableMap(new HashMap<>(shopsToLongLat)));
+    }
+
+    /**
+     * Constructor for class Menus that does the work of both constructors above.
+     * Every shop and its menu is added to the hash maps shopToWords, itemToPrice and itemToShop, which are then made
+     * so that they cannot be changed.
+     *
+     * @param webPort The port where the web server is running, or null if the menus did not come from the web server.
+     * @param shopDetailsList List of every shop with its name, W3W address and menu.
+     * @param shopsToLongLat Hash map of every shop to its location, or null if the locations are resolved when needed.
+     */
+    private Menus(String webPort, List<ShopDetails> shopDetailsList, Map<String, LongLat> shopsToLongLat) {
+
         this.webPort = webPort;
+        this.shopsToLongLat = shopsToLongLat;
+
+        Map<String, Integer> prices = new HashMap<>();
+        Map<String, String> shops = new HashMap<>();
+        Map<String, String[]> words = new HashMap<>();
+
+        for (ShopDetails shop : shopDetailsList) {
+            words.put(shop.name, shop.location.split("\\."));
+            for (ItemDetails itemDetail : shop.menu) {
+                prices.put(itemDetail.item, itemDetail.pence);
+                shops.put(itemDetail.item, shop.name);
+            }
+        }
+
+        itemToPrice = Collections.unmodifiableMap(prices);
+        itemToShop = Collections.unmodifiableMap(shops);
+        shopToWords = Collections.unmodifiableMap(words);
+    }
+
+    /**
+     * Method that gets the name, W3W address and menu of every shop from the web server.
+     *
+     * @param webPort The port where the web server is running.
+     * @return List of every shop with its name, W3W address and menu.
+     */
+    private static List<ShopDetails> getShopDetails(String webPort) {
 
         HttpResponse<String> response = null;
         try {
@@ -72,7 +136,9 @@ public final class Menus {
             HttpRequest request = HttpRequest.newBuilder() //HTTP GET request.
                     .uri(URI.create("http://localhost:" + webPort + "/menus/menus.json"))
                     .build();
+            long requestStart = Metrics.startTimer();
             response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            Metrics.HTTP_MENUS.recordSince(requestStart);
 
         } catch (IllegalArgumentException e) {
 
@@ -97,20 +163,12 @@ public final class Menus {
         if (response.statusCode() == SUCCESSFUL_RESPONSE_CODE) {
             Type listType = new TypeToken<List<ShopDetails>>() {
             }.getType();
-            List<ShopDetails> shopDetailsList = new Gson().fromJson(response.body(), listType);
-
-            for (ShopDetails shop : shopDetailsList) {
-                shopToWords.put(shop.name, shop.location.split("\\."));
-                for (ItemDetails itemDetail : shop.menu) {
-                    itemToPrice.put(itemDetail.item, itemDetail.pence);
-                    itemToShop.put(itemDetail.item, shop.name);
-                }
-            }
-
-        } else {
-            System.err.println("Status code is not 200.");
-            System.exit(1);
+            return new Gson().fromJson(response.body(), listType);
         }
+
+        System.err.println("Status code is not 200.");
+        System.exit(1);
+        return List.of();
     }
 
     /**
@@ -157,37 +215,56 @@ public final class Menus {
     /**
      *
      * Method that creates a useful HashMap that maps each shop to its location as a LongLat object.
-     * This makes use of the Words class which gets the location of a shops what3words address from the web server.
+     * This makes use of the Words class which gets the location of a shops what3words address from the web server
+     * (or from the W3W cache).
+     * The map is only created on the first call, every later call returns the same map.
+     * Every shop's address is resolved at the same time (see resolveShopLocationsAsync), and we then wait for all of them.
+     * This is synchronized since the drones of a fleet plan their orders at the same time.
      *
-     * @return HashMap that maps shop names to their locations as LongLats.
+     * @return HashMap that maps shop names to their locations as LongLats, which cannot be changed.
      */
-    private Map<String, LongLat> getShopsToLongLat (){
-
-        Map<String, LongLat> shopsToLongLat = new HashMap<>();
-
-        for (String shop : shopToWords.keySet()){
-            Words words = new Words(webPort, shopToWords.get(shop));
-            shopsToLongLat.put(shop, words.getCoordinates());
+    public final synchronized Map<String, LongLat> getShopsToLongLat (){
+
+        if (shopsToLongLat == null) {
+            resolveShopLocationsAsync();
+            Map<String, LongLat> resolved = new HashMap<>();
+            for (String shop : shopToWords.keySet()){
+                Words words = new Words(webPort, shopToWords.get(shop));
+                resolved.put(shop, words.getCoordinates());
+            }
+            shopsToLongLat = Collections.unmodifiableMap(resolved);
         }
 
         return shopsToLongLat;
     }
 
     /**
-     * Method that sorts an array of shops to visit for a given order (orderNo) such that travelling to the shops
-     * in order of how they appear in the array is the best (minimal moves) route.
-     * Since an order can only have items from at most 2 shops, there is only two combinations of routes to test:
-     * Route 1: Current Position -&gt; Shop 1 -&gt; Shop 2 -&gt; Pickup Location,
-     * Route 2: Current Position -&gt; Shop 2 -&gt; Shop 1 -&gt; Pickup location.
-     * Note: if an order only has items from one shop, it does not enter the first if statement and returns the shopsToVisit
-     * array directly without any sorting (since it is of 1 element).
-     * This is a brute force approach to a TSP problem.
-     * The algorithm method is needed here to calculate the cost (number of moves) of each route.
+     * Method that starts resolving the W3W address of every shop, without waiting for any of them.
+     * This is called as soon as the menus are loaded, so the addresses are ready (or on their way) by the time planning
+     * needs them. An address that is already being resolved is not requested again.
+     */
+    public final void resolveShopLocationsAsync(){
+
+        if (webPort == null) {
+            return;
+        }
+        for (String[] threeWords : shopToWords.values()){
+            Words.resolveAsync(webPort, threeWords);
+        }
+    }
+
+    /**
+     * Method that sorts the shops to visit for a given order (orderNo) such that travelling to the shops
+     * in order of how they appear in the list, and then to the pickup location, is the best (minimal moves) route.
+     * An order can have items from any number of shops, so we hand the shops' locations to a TourOptimizer, which
+     * finds the best order of the shops, by flying every order of a few shops or from the moves of every leg between them.
+     * Note: if an order only has items from one shop, there is nothing to sort and it is returned directly with its
+     * pickup location.
      *
      * @param currentPosition LongLat object where we are starting the order from.
-     * @param shopsToVisit Array of Strings which can be of length 1 or 2 which holds the name of the shops to visit for the order.
+     * @param shopsToVisit Array of Strings which holds the name of the shops to visit for the order.
      * @param deliverToLongLat Pickup Location which gets considered when calculating the cost of each route.
-     * @param landmarkPoints List of landmark Point objects which is needed as a parameter to run the algorithm method.
+     * @param landmarkPoints List of landmark Point objects which is needed to run the algorithm method for each leg.
      * @param buildings Buildings object which contains information about the NFZ's that is crucial when calculating the cost of each route.
      * @return List of LongLat objects which contains the destination we must visit for an order. This list is ordered so that if our
      * drone visits each destination in the order as it appears in the list, it will be taking the most efficient route (minimising moves).
@@ -197,54 +274,14 @@ public final class Menus {
 
         Map<String, LongLat> shopsToLonglat = getShopsToLongLat();
 
-        //Max number of shops that can be visited per order is 2.
-        int MAX_SHOPS_TO_VISIT = 2;
-        if(shopsToVisit.length == MAX_SHOPS_TO_VISIT) {
-
-
-            //Creating 2 dummy drones and setting their positions to the current position of the main drone.
-            Drone testDrone1 = new Drone();
-            testDrone1.setPosition(currentPosition);
-            Drone testDrone2 = new Drone();
-            testDrone2.setPosition(currentPosition);
-
-            //Creating a 2nd shopsToVisit array which is just the normal shopsToVisit array reversed.
-            String[] shopsToVisit2 = {shopsToVisit[1], shopsToVisit[0]};
-
-            List<LongLat> shopsToVisitLongLats = new ArrayList<>();
-            List<LongLat> shopsToVisitLongLats2 = new ArrayList<>();
-
-            //Converting all shops W3W address to LongLat and storing them in a list. We also add the pick up location.
-            for (String shop : shopsToVisit){
-                shopsToVisitLongLats.add(shopsToLonglat.get(shop));
-            }
-            shopsToVisitLongLats.add(deliverToLongLat);
-
-            //Running the algorithm with the test drone to see how many moves the route takes.
-            testDrone1.algorithm(landmarkPoints, shopsToVisitLongLats, buildings, new ArrayList<>());
-
-            for (String shop: shopsToVisit2){
-                shopsToVisitLongLats2.add(shopsToLonglat.get(shop));
-            }
-            shopsToVisitLongLats2.add(deliverToLongLat);
-
-            testDrone2.algorithm(landmarkPoints, shopsToVisitLongLats2, buildings, new ArrayList<>());
-
-            if (testDrone1.getMoves() < testDrone2.getMoves()){
-                return shopsToVisitLongLats;
-            }
-
-            return shopsToVisitLongLats2;
-
-        }
-        //The case where we only have 1 shop to visit, so we return it as a LongLat object in a list with its delivery location.
-        else{
-            List<LongLat> shopToVisitLongLats = new ArrayList<>();
-            shopToVisitLongLats.add(shopsToLonglat.get(shopsToVisit[0]));
-            shopToVisitLongLats.add(deliverToLongLat);
-            return shopToVisitLongLats;
+        //Converting all shops W3W address to LongLat and storing them in a list.
+        List<LongLat> shopsToVisitLongLats = new ArrayList<>();
+        for (String shop : shopsToVisit){
+            shopsToVisitLongLats.add(shopsToLonglat.get(shop));
         }
 
+        TourOptimizer tourOptimizer = new TourOptimizer(landmarkPoints, buildings);
+        return tourOptimizer.shortestTour(currentPosition, shopsToVisitLongLats, deliverToLongLat);
     }
 
 }
@@ -0,0 +1,275 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * This class holds the performance metrics of a run: counters of how often the hot parts of planning are run, and
+ * histograms of how long the slow parts (web server requests, database writes, planning an order) take.
+ * At the end of the run they are written to a JSON file and to a file in the Prometheus text format.
+ *
+ * Metrics are only collected when the ilp.metrics system property is set to true. Every place that records a metric
+ * first checks ENABLED, which is a constant, so when metrics are off the JIT compiler removes the recording altogether
+ * and it costs nothing.
+ * The counters and histograms are made of LongAdders, so the drones and the writer threads can record at the same
+ * time without waiting on each other.
+ *
+ */
+final class Metrics {
+
+    /**
+     * Whether metrics are collected, which is set with the ilp.metrics system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("ilp.metrics");
+    /**
+     * The name (without extension) of the files the metrics are written to, which can be set with the ilp.metricsFile
+     * system property.
+     */
+    public static final String REPORT_NAME = System.getProperty("ilp.metricsFile", "metrics");
+
+    /**
+     * The histograms count durations in buckets whose upper bounds are powers of 2 nanoseconds, from
+     * 2^FIRST_BUCKET_POWER (about 1 microsecond) to 2^LAST_BUCKET_POWER (about 69 seconds), with one more bucket for
+     * anything longer.
+     */
+    public static final int FIRST_BUCKET_POWER = 10;
+    public static final int LAST_BUCKET_POWER = 36;
+
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+
+    public static final Counter DIRECT_ROUTE_CHECKS = new Counter("ilp_direct_route_checks_total",
+            "Calls to Buildings.checkDirectRoute.");
+    public static final Counter NFZ_EDGE_TESTS = new Counter("ilp_nfz_edge_tests_total",
+            "NFZ edges tested for an intersection with a route.");
+    public static final Counter NEXT_POSITION_EVALUATIONS = new Counter("ilp_next_position_evaluations_total",
+            "Positions after a move that were worked out to choose the angle of the move.");
+    public static final Counter DRY_RUNS = new Counter("ilp_dry_runs_total",
+            "Dry-run drones created to count the moves of a route.");
+
+    public static final Histogram ORDER_PLANNING = new Histogram("ilp_order_planning_seconds",
+            "Time taken by a drone to plan an order and check it has enough moves for it.", null, null);
+    public static final Histogram HTTP_MENUS = new Histogram("ilp_http_request_seconds",
+            "Time taken by a request to the web server.", "endpoint", "menus");
+    public static final Histogram HTTP_BUILDINGS = new Histogram("ilp_http_request_seconds",
+            "Time taken by a request to the web server.", "endpoint", "buildings");
+    public static final Histogram HTTP_WORDS = new Histogram("ilp_http_request_seconds",
+            "Time taken by a request to the web server.", "endpoint", "words");
+    public static final Histogram DERBY_DELIVERIES_INSERT = new Histogram("ilp_derby_seconds",
+            "Time taken by a write to the database.", "operation", "deliveries_insert");
+    public static final Histogram DERBY_FLIGHTPATH_INSERT = new Histogram("ilp_derby_seconds",
+            "Time taken by a write to the database.", "operation", "flightpath_insert");
+    public static final Histogram DERBY_COMMIT = new Histogram("ilp_derby_seconds",
+            "Time taken by a write to the database.", "operation", "commit");
+
+    private Metrics() {
+    }
+
+    /**
+     * Method that starts timing something that is recorded in a histogram.
+     * @return The current time in nanoseconds, or 0 if metrics are not collected, so the clock is not even read.
+     */
+    public static long startTimer() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Method that writes every metric to the files REPORT_NAME.json and REPORT_NAME.prom, if metrics are collected.
+     */
+    public static void writeReports() {
+
+        if (!ENABLED) {
+            return;
+        }
+
+        JsonObject json = new JsonObject();
+        JsonObject counters = new JsonObject();
+        for (Counter counter : COUNTERS) {
+            counters.addProperty(counter.name, counter.sum());
+        }
+        json.add("counters", counters);
+
+        JsonArray histograms = new JsonArray();
+        for (Histogram histogram : HISTOGRAMS) {
+            histograms.add(histogram.toJson());
+        }
+        json.add("histograms", histograms);
+
+        StringBuilder prometheus = new StringBuilder();
+        for (Counter counter : COUNTERS) {
+            prometheus.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+            prometheus.append("# TYPE ").append(counter.name).append(" counter\n");
+            prometheus.append(counter.name).append(' ').append(counter.sum()).append('\n');
+        }
+        String lastName = null;
+        for (Histogram histogram : HISTOGRAMS) {
+            //Histograms with the same name are written together, with their help and type given once.
+            if (!histogram.name.equals(lastName)) {
+                prometheus.append("# HELP ").append(histogram.name).append(' ').append(histogram.help).append('\n');
+                prometheus.append("# TYPE ").append(histogram.name).append(" histogram\n");
+                lastName = histogram.name;
+            }
+            histogram.appendPrometheus(prometheus);
+        }
+
+        try {
+            Files.writeString(Path.of(REPORT_NAME + ".json"),
+                    new GsonBuilder().setPrettyPrinting().create().toJson(json), StandardCharsets.UTF_8);
+            Files.writeString(Path.of(REPORT_NAME + ".prom"), prometheus, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("An error occurred while writing the metrics files.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This class is a count of how many times something has happened.
+     */
+    static final class Counter {
+
+        private final String name;
+        private final String help;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+            COUNTERS.add(this);
+        }
+
+        /**
+         * Method that adds one to the count.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Method that adds to the count.
+         * @param amount The number to add.
+         */
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        /**
+         * Getter for the count.
+         * @return The number of times it has happened.
+         */
+        public long sum() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * This class is a histogram of durations, which counts how many fell in each bucket along with their total.
+     * A histogram can have one label (such as the endpoint of a request), so that histograms of the same kind of
+     * thing share a name.
+     */
+    static final class Histogram {
+
+        private final String name;
+        private final String help;
+        private final String labelName;
+        private final String labelValue;
+        private final LongAdder[] buckets = new LongAdder[LAST_BUCKET_POWER - FIRST_BUCKET_POWER + 2];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(String name, String help, String labelName, String labelValue) {
+            this.name = name;
+            this.help = help;
+            this.labelName = labelName;
+            this.labelValue = labelValue;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+            HISTOGRAMS.add(this);
+        }
+
+        /**
+         * Method that records the time since a timer was started, if metrics are collected.
+         * @param startNanos The time returned by startTimer.
+         */
+        public void recordSince(long startNanos) {
+            if (ENABLED) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * Method that records a duration.
+         * @param nanos The duration in nanoseconds.
+         */
+        public void record(long nanos) {
+
+            int power = nanos <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1);
+            int bucket = Math.min(Math.max(power - FIRST_BUCKET_POWER, 0), buckets.length - 1);
+            buckets[bucket].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * Method that gives the upper bound of a bucket in seconds, which is infinite for the last bucket.
+         */
+        private double upperBoundSeconds(int bucket) {
+            return bucket == buckets.length - 1 ? Double.POSITIVE_INFINITY
+                    : (1L << (bucket + FIRST_BUCKET_POWER)) / 1e9;
+        }
+
+        private JsonObject toJson() {
+
+            JsonObject json = new JsonObject();
+            json.addProperty("name", name);
+            if (labelName != null) {
+                json.addProperty(labelName, labelValue);
+            }
+            long total = count.sum();
+            json.addProperty("count", total);
+            json.addProperty("sumSeconds", sumNanos.sum() / 1e9);
+            json.addProperty("meanSeconds", total == 0 ? 0 : sumNanos.sum() / 1e9 / total);
+
+            //Only the buckets that something fell in are written, since most of them are empty.
+            JsonArray bucketsJson = new JsonArray();
+            for (int i = 0; i < buckets.length; i++) {
+                long bucketCount = buckets[i].sum();
+                if (bucketCount > 0) {
+                    JsonObject bucketJson = new JsonObject();
+                    bucketJson.addProperty("upToSeconds", i == buckets.length - 1 ? "+Inf"
+                            : String.valueOf(upperBoundSeconds(i)));
+                    bucketJson.addProperty("count", bucketCount);
+                    bucketsJson.add(bucketJson);
+                }
+            }
+            json.add("buckets", bucketsJson);
+            return json;
+        }
+
+        private void appendPrometheus(StringBuilder prometheus) {
+
+            String labels = labelName == null ? "" : labelName + "=\"" + labelValue + "\",";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String bound = i == buckets.length - 1 ? "+Inf" : String.valueOf(upperBoundSeconds(i));
+                prometheus.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String sampleLabels = labelName == null ? "" : "{" + labelName + "=\"" + labelValue + "\"}";
+            prometheus.append(name).append("_sum").append(sampleLabels).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+            prometheus.append(name).append("_count").append(sampleLabels).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package uk.ac.ed.inf;
+
+/**
+ * This class represents every move a drone can make as a precomputed change in longitude and latitude.
+ * Since the drone always flies 0.00015 degrees at an angle that is a multiple of 10, there are only 36 different moves
+ * (plus hovering), so we work out the change in longitude and latitude of each of them once.
+ * Moving the drone is then two additions on primitive coordinates, with no trigonometry and no new objects.
+ * The changes are worked out in exactly the same way as LongLat.nextPosition always has, so a drone flies to exactly
+ * the same positions either way.
+ *
+ * This class also converts coordinates to fixed-point numbers, which give exact keys for positions when caching.
+ */
+public final class MotionKernel {
+
+    /**
+     * The number of different angles the drone can fly at.
+     */
+    public static final int NUMBER_OF_ANGLES = 36;
+
+    /**
+     * The number of fixed-point units in one degree, so one unit is 1e-10 degrees (about 0.01 mm).
+     */
+    public static final double FIXED_POINT_SCALE = 1e10;
+
+    /**
+     * The change in longitude and latitude of a move at each angle, indexed by the angle divided by 10.
+     */
+    private static final double[] LNG_DELTAS = new double[NUMBER_OF_ANGLES];
+    private static final double[] LAT_DELTAS = new double[NUMBER_OF_ANGLES];
+
+    static {
+        final double distance = LongLat.DEFAULT_DISTANCE;
+        for (int i = 0; i < NUMBER_OF_ANGLES; i++) {
+            int angle = i * 10;
+            double lngDelta;
+            double latDelta;
+            if (angle == LongLat.NORTH) {
+                lngDelta = 0;
+                latDelta = distance;
+            } else if (angle == LongLat.WEST) {
+                lngDelta = -distance;
+                latDelta = 0;
+            } else if (angle == LongLat.SOUTH) {
+                lngDelta = 0;
+                latDelta = -distance;
+            } else if (angle == LongLat.EAST) {
+                lngDelta = distance;
+                latDelta = 0;
+            } else if (angle < 90 || (angle > 180 && angle < 270)) {
+                double v = Math.sin(Math.toRadians(angle % 90)) * distance;
+                double latDist2 = Math.sqrt((distance * distance) - (v * v));
+                lngDelta = angle < 90 ? latDist2 : -latDist2;
+                latDelta = angle < 90 ? v : -v;
+            } else if (angle < 180) {
+                double latDist = Math.sin(Math.toRadians(180 - angle)) * distance;
+                double longDist = Math.sqrt((distance * distance) - (latDist * latDist));
+                lngDelta = -longDist;
+                latDelta = latDist;
+            } else {
+                double latDist = Math.sin(Math.toRadians(360 - angle)) * distance;
+                double longDist = Math.sqrt((distance * distance) - (latDist * latDist));
+                lngDelta = longDist;
+                latDelta = -latDist;
+            }
+            LNG_DELTAS[i] = lngDelta;
+            LAT_DELTAS[i] = latDelta;
+        }
+    }
+
+    /**
+     * This class only holds static methods and the move table, so it is never instantiated.
+     */
+    private MotionKernel() {
+    }
+
+    /**
+     * Method that finds the index in the move table of an angle.
+     * Angles outside 0 to 350 (such as -10) are wrapped around first.
+     *
+     * @param angle Angle in degrees which is a multiple of 10.
+     * @return Index of the angle in the move table.
+     */
+    private static int index(int angle) {
+        return Math.floorMod(angle, 360) / 10;
+    }
+
+    /**
+     * Getter for the change in longitude of a move.
+     * @param angle Angle of the move in degrees, or the junk value -999 for a hover.
+     * @return Change in longitude after the move.
+     */
+    public static double lngDelta(int angle) {
+        return angle == LongLat.JUNK_VALUE ? 0 : LNG_DELTAS[index(angle)];
+    }
+
+    /**
+     * Getter for the change in latitude of a move.
+     * @param angle Angle of the move in degrees, or the junk value -999 for a hover.
+     * @return Change in latitude after the move.
+     */
+    public static double latDelta(int angle) {
+        return angle == LongLat.JUNK_VALUE ? 0 : LAT_DELTAS[index(angle)];
+    }
+
+    /**
+     * Method that converts a coordinate in degrees to a fixed-point number, rounding to the nearest unit.
+     * Two coordinates that round to the same fixed-point number are the same position for caching.
+     *
+     * @param degrees Longitude or latitude in degrees.
+     * @return The coordinate as a whole number of fixed-point units.
+     */
+    public static long toFixedPoint(double degrees) {
+        return Math.round(degrees * FIXED_POINT_SCALE);
+    }
+}
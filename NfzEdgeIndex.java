@@ -0,0 +1,194 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a spatial index over the edges of the no-fly-zones.
+ * The bounding box of every NFZ edge is split into a uniform grid of cells, and each cell holds the edges that pass
+ * through it.
+ * When checking whether a route crosses a NFZ, we then only need to test the edges in the cells the route passes over,
+ * rather than every edge of every NFZ.
+ * Since a single drone move is far smaller than a cell, most checks only look at one or two cells.
+ * The index is built once when the buildings object is created and is never changed afterwards, so it can be
+ * shared by any number of drones.
+ *
+ * The edges are stored cell by cell in primitive arrays (see EdgeArrays), so the edges of a cell are next to each other
+ * in memory, and each cell is checked in one go by an IntersectionKernel (which uses the Vector API if it can).
+ * An edge that passes through several cells is stored once for each of them.
+ */
+public final class NfzEdgeIndex {
+
+    /**
+     * The largest number of cells we split each axis into, so that the grid stays small in memory for large maps.
+     */
+    public static final int MAX_CELLS_PER_AXIS = 256;
+
+    /**
+     * The edges of every cell (in row-major order), one cell after the other.
+     */
+    private final EdgeArrays cellEdges;
+    /**
+     * For each cell, the index in cellEdges of its first edge, with one more entry at the end so that the edges of
+     * cell c are from cellStart[c] up to (but not including) cellStart[c + 1].
+     */
+    private final int[] cellStart;
+    /**
+     * The kernel that checks a route against the edges of a cell.
+     */
+    private final IntersectionKernel kernel = IntersectionKernel.DEFAULT;
+
+    /**
+     * Bounding box of every NFZ edge, which is the area covered by the grid.
+     */
+    private final double minLng;
+    private final double minLat;
+    private final double maxLng;
+    private final double maxLat;
+
+    /**
+     * The number of cells along each axis and the size of a cell in degrees.
+     */
+    private final int columns;
+    private final int rows;
+    private final double cellWidth;
+    private final double cellHeight;
+
+    /**
+     * Constructor for class NfzEdgeIndex.
+     * We find the bounding box of every edge and choose a grid of roughly one cell per edge.
+     * We then add every edge to each cell that its bounding box overlaps.
+     *
+     * @param nfzEdges List of the edges of every NFZ polygon as Line2D objects.
+     */
+    NfzEdgeIndex(List<Line2D> nfzEdges) {
+
+        Line2D[] edges = nfzEdges.toArray(new Line2D[0]);
+
+        double lngLow = Double.POSITIVE_INFINITY;
+        double latLow = Double.POSITIVE_INFINITY;
+        double lngHigh = Double.NEGATIVE_INFINITY;
+        double latHigh = Double.NEGATIVE_INFINITY;
+        for (Line2D edge : edges) {
+            lngLow = Math.min(lngLow, Math.min(edge.getX1(), edge.getX2()));
+            latLow = Math.min(latLow, Math.min(edge.getY1(), edge.getY2()));
+            lngHigh = Math.max(lngHigh, Math.max(edge.getX1(), edge.getX2()));
+            latHigh = Math.max(latHigh, Math.max(edge.getY1(), edge.getY2()));
+        }
+
+        if (edges.length == 0) {
+            lngLow = latLow = lngHigh = latHigh = 0;
+        }
+        minLng = lngLow;
+        minLat = latLow;
+        maxLng = lngHigh;
+        maxLat = latHigh;
+
+        int cellsPerAxis = (int) Math.ceil(Math.sqrt(edges.length));
+        columns = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, cellsPerAxis));
+        rows = columns;
+        //A degenerate (zero width or height) bounding box still gets a non-zero cell size.
+        cellWidth = Math.max(maxLng - minLng, Double.MIN_NORMAL) / columns;
+        cellHeight = Math.max(maxLat - minLat, Double.MIN_NORMAL) / rows;
+
+        List<List<Integer>> cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edges.length; i++) {
+            Line2D edge = edges[i];
+            int firstColumn = column(Math.min(edge.getX1(), edge.getX2()));
+            int lastColumn = column(Math.max(edge.getX1(), edge.getX2()));
+            int firstRow = row(Math.min(edge.getY1(), edge.getY2()));
+            int lastRow = row(Math.max(edge.getY1(), edge.getY2()));
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    cells.get(r * columns + c).add(i);
+                }
+            }
+        }
+
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < columns * rows; i++) {
+            cellStart[i + 1] = cellStart[i] + cells.get(i).size();
+        }
+        cellEdges = new EdgeArrays(cellStart[columns * rows]);
+        for (int i = 0; i < columns * rows; i++) {
+            int position = cellStart[i];
+            for (int edgeIndex : cells.get(i)) {
+                Line2D edge = edges[edgeIndex];
+                cellEdges.set(position, edge.getX1(), edge.getY1(), edge.getX2(), edge.getY2());
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Method that finds the column of the grid that a longitude falls in, clamped to the edges of the grid.
+     * @param lng Longitude that we want the column of.
+     * @return Index of the column.
+     */
+    private int column(double lng) {
+        return Math.max(0, Math.min(columns - 1, (int) ((lng - minLng) / cellWidth)));
+    }
+
+    /**
+     * Method that finds the row of the grid that a latitude falls in, clamped to the edges of the grid.
+     * @param lat Latitude that we want the row of.
+     * @return Index of the row.
+     */
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) ((lat - minLat) / cellHeight)));
+    }
+
+    /**
+     *
+     * Method that checks whether the straight line between two positions intersects any NFZ edge.
+     * If the bounding box of the line does not overlap the grid, it cannot intersect any edge.
+     * Otherwise, we only test the edges in the cells that the bounding box of the line overlaps.
+     * An edge that passes through several of these cells may be tested more than once, which is cheaper than
+     * keeping track of the edges already tested.
+     *
+     * @param startLng Longitude of the start of the line.
+     * @param startLat Latitude of the start of the line.
+     * @param endLng Longitude of the end of the line.
+     * @param endLat Latitude of the end of the line.
+     * @return Boolean value true if the line intersects at least one NFZ edge.
+     */
+    public boolean intersectsAnyEdge(double startLng, double startLat, double endLng, double endLat) {
+
+        double lineMinLng = Math.min(startLng, endLng);
+        double lineMaxLng = Math.max(startLng, endLng);
+        double lineMinLat = Math.min(startLat, endLat);
+        double lineMaxLat = Math.max(startLat, endLat);
+
+        if (cellEdges.size() == 0 || lineMaxLng < minLng || lineMinLng > maxLng || lineMaxLat < minLat || lineMinLat > maxLat) {
+            return false;
+        }
+
+        int firstColumn = column(lineMinLng);
+        int lastColumn = column(lineMaxLng);
+        int firstRow = row(lineMinLat);
+        int lastRow = row(lineMaxLat);
+        //Only used for the metrics, so it is left out by the JIT compiler when they are not collected.
+        int edgesTested = 0;
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                edgesTested += cellStart[cell + 1] - cellStart[cell];
+                if (kernel.anyIntersects(cellEdges, cellStart[cell], cellStart[cell + 1], startLng, startLat, endLng, endLat)) {
+                    if (Metrics.ENABLED) {
+                        Metrics.NFZ_EDGE_TESTS.add(edgesTested);
+                    }
+                    return true;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.NFZ_EDGE_TESTS.add(edgesTested);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ *
+ * This interface represents a way of choosing the sequence in which the drone attempts the orders of a day.
+ * The main method goes through the orders in the sequence given, and still checks that the drone has enough moves
+ * for each order before doing it, so a sequencer only has to say which orders to try first.
+ *
+ * With a fleet of drones, each drone gets a sequence of its own (see sequenceForDrones).
+ *
+ * Which sequencer is used is set with the ilp.sequencer system property: "greedy" (the default) tries the most
+ * valuable orders first, and "orienteering" plans the whole day to deliver as much value as possible.
+ *
+ */
+interface OrderSequencer {
+
+    /**
+     * Method that chooses the sequence in which to attempt the orders.
+     *
+     * @param ordersSortedByValue Linked hash map of every order number to its cost in pence, most valuable first.
+     * @param tourOfOrder Function that gives the destinations of an order (its shops in the best order, then its
+     *                    pickup location) when the order is started from Appleton Tower.
+     * @return List of every order number, in the sequence they should be attempted in.
+     */
+    List<String> sequence(Map<String, Integer> ordersSortedByValue, Function<String, List<LongLat>> tourOfOrder);
+
+    /**
+     * Method that chooses the sequence in which each drone of a fleet attempts the orders.
+     * By default, the sequence for one drone is dealt out to the drones in turn (see dealInTurn). A sequencer whose
+     * sequence is a plan for one drone's battery should plan each drone's sequence instead.
+     *
+     * @param ordersSortedByValue Linked hash map of every order number to its cost in pence, most valuable first.
+     * @param tourOfOrder Function that gives the destinations of an order (its shops in the best order, then its
+     *                    pickup location) when the order is started from Appleton Tower.
+     * @param droneCount The number of drones in the fleet.
+     * @return List of the sequence of every drone, which between them have every order number once.
+     */
+    default List<List<String>> sequenceForDrones(Map<String, Integer> ordersSortedByValue,
+                                                 Function<String, List<LongLat>> tourOfOrder, int droneCount) {
+        return dealInTurn(sequence(ordersSortedByValue, tourOfOrder), droneCount);
+    }
+
+    /**
+     * Method that deals a sequence of orders out to the drones of a fleet in turn, so that every drone's sequence keeps
+     * the order of the sequence given.
+     *
+     * @param orderSequence List of order numbers in the sequence they should be attempted in.
+     * @param droneCount The number of drones in the fleet.
+     * @return List of the sequence of every drone.
+     */
+    static List<List<String>> dealInTurn(List<String> orderSequence, int droneCount) {
+
+        List<List<String>> droneSequences = new ArrayList<>();
+        for (int drone = 0; drone < droneCount; drone++) {
+            droneSequences.add(new ArrayList<>());
+        }
+        for (int i = 0; i < orderSequence.size(); i++) {
+            droneSequences.get(i % droneCount).add(orderSequence.get(i));
+        }
+        return droneSequences;
+    }
+
+    /**
+     * Method that creates the sequencer chosen with the ilp.sequencer system property.
+     *
+     * @param landmarkPoints List of points which contains the locations of all the landmarks, for the dry-run drones.
+     * @param buildings Buildings object which contains the NFZ's, for the dry-run drones.
+     * @return The chosen order sequencer, or the greedy one if the property is not set or not recognised.
+     */
+    static OrderSequencer fromSystemProperty(List<Point> landmarkPoints, Buildings buildings) {
+
+        String name = System.getProperty("ilp.sequencer", "greedy");
+
+        if (name.equals("orienteering")) {
+            return new OrienteeringOrderSequencer(landmarkPoints, buildings,
+                    OrienteeringOrderSequencer.DEFAULT_TIME_BUDGET_MILLIS);
+        }
+        if (!name.equals("greedy")) {
+            System.err.println("Unknown order sequencer " + name + ", the greedy one is used instead.");
+        }
+        return new GreedyOrderSequencer();
+    }
+
+}
@@ -0,0 +1,226 @@
+package uk.ac.ed.inf;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * This class writes the deliveries and flightpath rows of completed orders to the database on a thread of its own, so
+ * that the drones can plan and fly their next orders while the rows of their last ones are being written.
+ * Planning uses the CPU and writing mostly waits on the database, so doing them at the same time means the day takes
+ * about as long as the slower of the two, rather than both added together.
+ *
+ * The drones hand over the flight log of every completed order (and of their way back to AT) through a bounded queue,
+ * which the writer thread takes from in the order they were handed over. If the writer falls behind and the queue is
+ * full, a drone waits until there is room, so the flight logs waiting to be written never use more than a fixed amount
+ * of memory. Since the queue is first-in-first-out, the rows of a drone's way back to AT are always written after the
+ * rows of its orders.
+ * If the writer thread stops because of an error, the writer is marked as failed, and from then on the drones (and
+ * close) stop waiting for room in the queue, since nothing will ever take from it again.
+ *
+ */
+final class OrderWriter {
+
+    /**
+     * The number of completed orders that can wait to be written, which can be set with the ilp.writeQueueSize system
+     * property.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = Integer.getInteger("ilp.writeQueueSize", 64);
+
+    /**
+     * Put in the queue when the writer is closed, to tell the writer thread that there is nothing more to write.
+     */
+    private static final CompletedFlight END_OF_DAY = new CompletedFlight(null, 0, null, 0);
+
+    /**
+     * How long (in milliseconds) a drone waits for room in the queue before checking again whether the writer thread
+     * has failed.
+     */
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    private final Orders orders;
+    private final BlockingQueue<CompletedFlight> queue;
+    private final Thread thread;
+    /**
+     * Whether the writer thread has stopped because of an error, so that nothing handed over is written any more.
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * Constructor for class OrderWriter.
+     * The writer thread is started straight away, and waits for flight logs to be handed over.
+     *
+     * @param orders Orders object which the deliveries and flightpath rows are written with. Only the writer thread
+     *               writes with it until the writer is closed.
+     * @param queueSize The number of completed orders that can wait to be written before the drones have to wait.
+     */
+    OrderWriter(Orders orders, int queueSize) {
+        this.orders = orders;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.thread = new Thread(this::writeUntilClosed, "order-writer-" + orders.fullDate);
+        thread.start();
+    }
+
+    /**
+     * Method that hands over a completed order to be written to the deliveries and flightpath tables.
+     * This waits while the queue is full.
+     *
+     * @param orderNo The order number.
+     * @param costInPence The total cost of the order, including the delivery charge.
+     * @param flightLog FlightLog object with every move the drone made for the order, which must not be changed after this.
+     * @param droneId The number of the drone that delivered the order.
+     */
+    public void writeOrder(String orderNo, int costInPence, FlightLog flightLog, int droneId) {
+        put(new CompletedFlight(orderNo, costInPence, flightLog, droneId));
+    }
+
+    /**
+     * Method that hands over the way back to AT of a drone to be written to the flightpath table.
+     * This waits while the queue is full.
+     *
+     * @param flightLog FlightLog object with every move the drone made on its way back, which must not be changed after this.
+     * @param droneId The number of the drone.
+     */
+    public void writeReturnHome(FlightLog flightLog, int droneId) {
+        put(new CompletedFlight(null, 0, flightLog, droneId));
+    }
+
+    /**
+     * Method that waits until everything handed over has been written and committed, and then stops the writer thread.
+     * Nothing can be handed over after this.
+     * If the writer thread has failed, this returns straight away.
+     */
+    public void close() {
+
+        try {
+            if (offer(END_OF_DAY)) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted while waiting for the rows of " + orders.fullDate + " to be written.");
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method that hands over a completed flight, waiting while the queue is full.
+     * If the writer thread has failed, the rows of the flight cannot be written, so this is shown and they are dropped.
+     */
+    private void put(CompletedFlight completedFlight) {
+
+        try {
+            if (!offer(completedFlight)) {
+                reportNotWritten(completedFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in the write queue.", e);
+        }
+    }
+
+    /**
+     * Method that puts a completed flight in the queue, waiting while the queue is full, but checking every
+     * FAILURE_CHECK_MILLIS whether the writer thread has failed.
+     *
+     * @param completedFlight The completed flight.
+     * @return Boolean value true if the completed flight is in the queue, or false if the writer thread has failed.
+     * @throws InterruptedException If interrupted while waiting for room in the queue.
+     */
+    private boolean offer(CompletedFlight completedFlight) throws InterruptedException {
+
+        while (!failed) {
+            if (queue.offer(completedFlight, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method run by the writer thread, which writes every completed order in the queue until the writer is closed.
+     * The rows of each order are committed together as one transaction. If writing an order fails, the error is shown
+     * and the writer goes on to the next one, so the drones are never left waiting for room in the queue.
+     * Anything else that stops the thread (such as running out of memory) marks the writer as failed, so the drones and
+     * close stop waiting for it.
+     */
+    private void writeUntilClosed() {
+
+        try {
+            writeOrders();
+        } catch (Throwable e) {
+            failed = true;
+            System.err.println("The writer of " + orders.fullDate + " has stopped because of an error, so no more rows "
+                    + "are written.");
+            e.printStackTrace();
+            CompletedFlight notWritten;
+            while ((notWritten = queue.poll()) != null) {
+                if (notWritten != END_OF_DAY) {
+                    reportNotWritten(notWritten);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that shows that the rows of a completed flight were not written because the writer thread has failed.
+     */
+    private void reportNotWritten(CompletedFlight completedFlight) {
+        System.err.println("The writer of " + orders.fullDate + " has failed, so the rows of "
+                + (completedFlight.orderNo != null ? "order " + completedFlight.orderNo
+                : "drone " + completedFlight.droneId + "'s way back to AT") + " were not written.");
+    }
+
+    /**
+     * Method that writes every completed order in the queue until the writer is closed, for writeUntilClosed.
+     */
+    private void writeOrders() {
+
+        while (true) {
+            CompletedFlight completedFlight;
+            try {
+                completedFlight = queue.take();
+            } catch (InterruptedException e) {
+                System.err.println("The writer of " + orders.fullDate + " was interrupted, so some rows were not written.");
+                e.printStackTrace();
+                failed = true;
+                return;
+            }
+            if (completedFlight == END_OF_DAY) {
+                return;
+            }
+
+            try {
+                if (completedFlight.orderNo != null) {
+                    orders.insertIntoDeliveries(completedFlight.orderNo, completedFlight.costInPence);
+                }
+                orders.insertFlightLogIntoFlightpath(completedFlight.orderNo, completedFlight.flightLog,
+                        completedFlight.droneId);
+                orders.commitOrder();
+            } catch (RuntimeException e) {
+                System.err.println("An error occurred while writing the rows of order " + completedFlight.orderNo + ".");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This class is a completed order (or way back to AT, with no order number) waiting in the queue to be written.
+     */
+    private static final class CompletedFlight {
+
+        private final String orderNo;
+        private final int costInPence;
+        private final FlightLog flightLog;
+        private final int droneId;
+
+        private CompletedFlight(String orderNo, int costInPence, FlightLog flightLog, int droneId) {
+            this.orderNo = orderNo;
+            this.costInPence = costInPence;
+            this.flightLog = flightLog;
+            this.droneId = droneId;
+        }
+    }
+
+}
@@ -1,11 +1,13 @@
 package uk.ac.ed.inf;
 
+import org.apache.commons.collections4.MultiMapUtils;
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -13,13 +15,21 @@ import java.util.stream.Collectors;
  * Once an orders object is created, it has lots of information we need about every order from a given date,
  * such as its order number and its pick up location (delivery location).
  * This means we only need to create one orders object since the orders made will not change on the given day.
- * All the information relevant to this class is on the database.
+ * Each orders object has its own connection to the database, so the orders of several days can be delivered at the
+ * same time; the deliveries and flightpath tables are created once beforehand with the createTables method.
+ * The orders read from the database cannot be changed once the orders object is created, so they can be read by any
+ * number of drones at the same time; only the writes to the deliveries and flightpath tables change its state.
+ * Orders placed later in the day are not added to these, but are picked up separately with the pollNewOrders method.
+ * All the information relevant to this class is on the database, except for an orders object made from a day
+ * snapshot (see DaySnapshot), which has no connection to the database: its orders come from the snapshot, and the
+ * rows of the orders it delivers are not written anywhere.
  *
  */
 public final class Orders {
 
     /**
      * Database port number is needed to access the database that has information on every order placed on any date.
+     * This is null if the orders came from a day snapshot.
      */
     public final String dbPort;
     /**
@@ -33,42 +43,85 @@ public final class Orders {
      * List of the orders' order number of the date given.
      * These will be eight-character hexadecimal strings giving the unique order number of an order.
      */
-    public static final List<String> orderNoList = new ArrayList<>();
+    public final List<String> orderNoList;
     /**
      * List of the orders' pick up location.
      * These will be a variable-length string of at most 18 characters giving the WhatThreeWords address of
      * the delivery location.
      */
-    public static final List<String> deliverToList = new ArrayList<>();
+    public final List<String> deliverToList;
     /**
      * This hash map maps the eight-character hexadecimal string giving the unique order number of an order to the items
      * that were requested from shops in the order.
      * Since we can have one order to many items, we use a multi-valued hash map to achieve this affect.
      */
-    public static final MultiValuedMap<String, String> orderItemMap = new ArrayListValuedHashMap<>();
+    public final MultiValuedMap<String, String> orderItemMap;
     /**
      * This hash map maps the eight-character hexadecimal string giving the unique order number of an order to the
      * variable-length string of at most 18 characters giving the WhatThreeWords address of the delivery location.
      */
-    public static final Map<String, String> orderNoDeliverToMap = new HashMap<>();
+    public final Map<String, String> orderNoDeliverToMap;
+
+    /**
+     * The number of flightpath rows sent to the database in one batch, which can be changed with the system property
+     * ilp.flightpathBatchSize.
+     */
+    public static final int FLIGHTPATH_BATCH_SIZE = Integer.getInteger("ilp.flightpathBatchSize", 500);
+    /**
+     * The number of deliveries rows sent to the database in one batch, which can be changed with the system property
+     * ilp.deliveriesBatchSize.
+     */
+    public static final int DELIVERIES_BATCH_SIZE = Integer.getInteger("ilp.deliveriesBatchSize", 50);
+
+    /**
+     * One row per item of every order on the date, with the rows of each order next to each other.
+     * A left join keeps orders that have no items, which then have a null item.
+     */
+    private static final String ORDERS_QUERY = "select o.orderNo, o.deliverTo, d.item from orders o " +
+            "left join orderDetails d on o.orderNo = d.orderNo " +
+            "where o.deliveryDate=(?) order by o.orderNo";
+
+    /**
+     * Connection to the database, kept open so that writes to the two tables can be committed once per order.
+     */
+    private Connection conn;
 
     /**
      * To limit the number of prepared statements we make, we declare them here, outside of any method that may be called more than once.
+     * Rows are added to these in batches, which are sent to the database when they are full or when an order is committed.
+     */
+    private BatchedStatement psFlightpath;
+    private BatchedStatement psDeliveries;
+    /**
+     * Whether a row of the order being written could not be added, or a full batch of its rows could not be sent to the
+     * database, so that commitOrder rolls the order back instead of committing what is left of it.
+     * This is only used by the thread writing the orders.
      */
-    private static PreparedStatement psFlightpath;
-    private static PreparedStatement psDeliveries;
+    private boolean orderFailed = false;
 
+    /**
+     * Connection to the database used to look for orders placed later in the day, which is only opened the first time
+     * we look. It is separate from the connection the deliveries and flightpath rows are written with, so that looking
+     * never becomes part of an order's transaction.
+     */
+    private Connection pollConn;
+    /**
+     * Hash map of every order placed later in the day (found by pollNewOrders) to its W3W delivery location.
+     */
+    private final Map<String, String> placedLaterDeliverToMap = new ConcurrentHashMap<>();
 
     /**
      * Constructor for class Orders.
      * We must specify the port the database is running on and the date we are interested in when creating an Orders object.
      *
      * We connect to the database server and we retrieve the information we need from the two tables.
-     * From one table we get the order number and where to deliver it to, and for each of these orders, we get the items
-     * that was requested.
+     * From one table we get the order number and where to deliver it to, and from the other we get the items
+     * that was requested in each of these orders.
+     * Both tables are read with a single join query for the date, so the number of round-trips to the database does not
+     * grow with the number of orders.
      *
-     * We also drop the flightpath and deliveries table if they exist and create them.
      * We initialise our prepare statements so that we are ready to insert into any of the two tables with the methods.
+     * After the tables are created, we turn off auto-commit so that the rows of each order are written in one transaction.
      *
      * @param dbPort the port the web server is running on.
      * @param fullDate the date that the orders must be placed on.
@@ -78,42 +131,100 @@ public final class Orders {
         this.dbPort = dbPort;
         this.fullDate = fullDate;
 
-        //Reading from orders table
+        List<String> orderNos = new ArrayList<>();
+        List<String> deliverTos = new ArrayList<>();
+        MultiValuedMap<String, String> orderItems = new ArrayListValuedHashMap<>();
+        Map<String, String> orderNoDeliverTos = new HashMap<>();
+
+        //Reading from the orders and orderDetails tables in one query
         try{
 
-            Connection conn = DriverManager.getConnection("jdbc:derby://localhost:" + dbPort + "/derbyDB");
-            Statement statement = conn.createStatement();
+            conn = DriverManager.getConnection("jdbc:derby://localhost:" + dbPort + "/derbyDB");
 
-            final String ordersQuery = "select * from orders where deliveryDate=(?)";
-            PreparedStatement psOrderQuery = conn.prepareStatement(ordersQuery);
+            PreparedStatement psOrderQuery = conn.prepareStatement(ORDERS_QUERY);
             psOrderQuery.setDate(1, this.fullDate);
 
             ResultSet rs = psOrderQuery.executeQuery();
             while (rs.next()){
                 String orderNo = rs.getString(1);
-                orderNoList.add(orderNo);
-                deliverToList.add(rs.getString(4));
-                orderNoDeliverToMap.put(orderNo, rs.getString(4));
+                if (!orderNoDeliverTos.containsKey(orderNo)){
+                    orderNos.add(orderNo);
+                    deliverTos.add(rs.getString(2));
+                    orderNoDeliverTos.put(orderNo, rs.getString(2));
+                }
 
-                //Reading from orderDetails table
-                try{
+                String item = rs.getString(3);
+                if (item != null){
+                    orderItems.put(orderNo, item);
+                }
+            }
+            rs.close();
+            psOrderQuery.close();
 
-                    final String orderDetailsQuery = "select * from orderDetails where orderNo=(?)";
-                    PreparedStatement psOrderDetailsQuery = conn.prepareStatement(orderDetailsQuery);
-                    psOrderDetailsQuery.setString(1, orderNo);
+            //Set up prepareStatements here so we don't create lots of them
+            psFlightpath = new BatchedStatement(conn.prepareStatement(
+                    "insert into flightpath values (?, ?, ?, ?, ?, ?, ?, ?)"), FLIGHTPATH_BATCH_SIZE);
 
-                    ResultSet rs2 = psOrderDetailsQuery.executeQuery();
-                    while(rs2.next()){
-                        String item = rs2.getString(2);
-                        orderItemMap.put(orderNo, item);
-                    }
+            psDeliveries = new BatchedStatement(conn.prepareStatement(
+                    "insert into deliveries values (?, ?, ?, ?)"), DELIVERIES_BATCH_SIZE);
 
-                } catch (java.sql.SQLException e){
-                    e.printStackTrace();
-                }
+            conn.setAutoCommit(false);
+
+
+        } catch (java.sql.SQLException e){
+            e.printStackTrace();
+        }
+
+        orderNoList = Collections.unmodifiableList(orderNos);
+        deliverToList = Collections.unmodifiableList(deliverTos);
+        orderItemMap = MultiMapUtils.unmodifiableMultiValuedMap(orderItems);
+        orderNoDeliverToMap = Collections.unmodifiableMap(orderNoDeliverTos);
+    }
+
+    /**
+     * Constructor for class Orders from the orders of a day that we already have, such as the ones in a day snapshot,
+     * rather than ones from the database.
+     * There is no connection to the database, so no rows are written and no orders placed later are looked for.
+     *
+     * @param fullDate the date that the orders were placed on.
+     * @param orderNos List of the order numbers of the date, in the order they were read from the database.
+     * @param orderNoToDeliverTo Hash map of every order number to the W3W address of its delivery location.
+     * @param orderNoToItems Hash map of every order number to the names of the items in the order.
+     */
+    Orders(Date fullDate, List<String> orderNos, Map<String, String> orderNoToDeliverTo,
+           Map<String, List<String>> orderNoToItems){
+
+        this.dbPort = null;
+        this.fullDate = fullDate;
+
+        List<String> deliverTos = new ArrayList<>();
+        MultiValuedMap<String, String> orderItems = new ArrayListValuedHashMap<>();
+        for (String orderNo : orderNos){
+            deliverTos.add(orderNoToDeliverTo.get(orderNo));
+            for (String item : orderNoToItems.get(orderNo)){
+                orderItems.put(orderNo, item);
             }
+        }
+
+        orderNoList = List.copyOf(orderNos);
+        deliverToList = Collections.unmodifiableList(deliverTos);
+        orderItemMap = MultiMapUtils.unmodifiableMultiValuedMap(orderItems);
+        orderNoDeliverToMap = Collections.unmodifiableMap(new HashMap<>(orderNoToDeliverTo));
+    }
+
+    /**
+     *
+     * Method that drops the flightpath and deliveries tables if they exist and creates them.
+     * This is called once per run, before any orders object is created, so that the rows of every day delivered in the
+     * run are kept. Each row has the date of its order, so the days can be told apart.
+     *
+     * @param dbPort the port the database is running on.
+     */
+    public static void createTables(String dbPort){
 
+        try (Connection conn = DriverManager.getConnection("jdbc:derby://localhost:" + dbPort + "/derbyDB")){
 
+            Statement statement = conn.createStatement();
             DatabaseMetaData databaseMetaData = conn.getMetaData();
 
             //Drop deliveries table if it exists
@@ -136,21 +247,16 @@ public final class Orders {
                     "fromLatitude double," +
                     "angle integer," +
                     "toLongitude double," +
-                    "toLatitude double)");
+                    "toLatitude double," +
+                    "droneId integer," +
+                    "deliveryDate date)");
 
             //Create deliveries table
             statement.execute("create table deliveries(" +
                     "orderNo char(8)," +
                     "deliveredTo varchar(19)," +
-                    "costInPence int)");
-
-            //Set up prepareStatements here so we don't create lots of them
-            psFlightpath = conn.prepareStatement(
-                    "insert into flightpath values (?, ?, ?, ?, ?, ?)");
-
-            psDeliveries = conn.prepareStatement(
-                    "insert into deliveries values (?, ?, ?)");
-
+                    "costInPence int," +
+                    "deliveryDate date)");
 
         } catch (java.sql.SQLException e){
             e.printStackTrace();
@@ -176,12 +282,15 @@ public final class Orders {
      * Method that creates a hashmap that maps orders' order number to the pick up location as a LongLat.
      * This iterates over each W3W pick up location and
      * Uses the getCoordinates method from Words class to convert W3W address into LongLat.
+     * Every address is resolved at the same time (see resolveDeliverToLocationsAsync), and we then wait for all of them.
      *
      * @param webPort webPort of web server is needed to convert from w3w into longlat.
      * @return Hashmap mapping orderNo to pick up location as LongLat.
      */
     public final Map<String, LongLat> getOrderNoToDeliverToLongLat(String webPort){
 
+        resolveDeliverToLocationsAsync(webPort);
+
         Map<String, LongLat> orderNoToDeliverToLongLat = new HashMap<>();
 
         for (String orderNo : orderNoDeliverToMap.keySet()){
@@ -191,6 +300,20 @@ public final class Orders {
         return orderNoToDeliverToLongLat;
     }
 
+    /**
+     * Method that starts resolving the W3W pick up location of every order, without waiting for any of them.
+     * This is called as soon as the orders are loaded, so the locations are ready (or on their way) by the time planning
+     * needs them. A location that is already being resolved, such as one shared by two orders, is not requested again.
+     *
+     * @param webPort webPort of web server is needed to convert from w3w into longlat.
+     */
+    public final void resolveDeliverToLocationsAsync(String webPort){
+
+        for (String deliverTo : orderNoDeliverToMap.values()){
+            Words.resolveAsync(webPort, deliverTo.split("\\."));
+        }
+    }
+
 
     /**
      *
@@ -223,28 +346,37 @@ public final class Orders {
     /**
      *
      * Method that writes to the deliveries table.
-     * The prepared statement created in the constructor is getting updated and executed with values passed in.
+     * The prepared statement created in the constructor is getting updated with values passed in and added to its batch.
+     * The row is only guaranteed to be in the table once commitOrder has been called.
      *
      * @param orderNo  the eight-character hexadecimal string assigned to this order in the orders table.
      * @param costInPence the total cost of the order, including the standard 50p delivery charge.
      */
     public final void insertIntoDeliveries (String orderNo, int costInPence){
 
+        if (conn == null || orderFailed){
+            return;
+        }
+        long insertStart = Metrics.startTimer();
         try{
-            psDeliveries.setString(1, orderNo);
-            psDeliveries.setString(2, orderNoDeliverToMap.get(orderNo));
-            psDeliveries.setInt(3, costInPence);
-            psDeliveries.execute();
+            PreparedStatement ps = psDeliveries.getPreparedStatement();
+            ps.setString(1, orderNo);
+            ps.setString(2, orderNoDeliverToMap.getOrDefault(orderNo, placedLaterDeliverToMap.get(orderNo)));
+            ps.setInt(3, costInPence);
+            ps.setDate(4, fullDate);
+            psDeliveries.addRow();
         } catch (java.sql.SQLException e){
             e.printStackTrace();
-
+            orderFailed = true;
         }
+        Metrics.DERBY_DELIVERIES_INSERT.recordSince(insertStart);
     }
 
     /**
      *
      * Method that writes to the flightpath table.
-     * The prepared statement created in the constructor is getting updated and executed with values passed in.
+     * The prepared statement created in the constructor is getting updated with values passed in and added to its batch.
+     * The row is only guaranteed to be in the table once commitOrder has been called.
      *
      * @param orderNo the eight-character order number for the lunch order which the drone is currently
      * collecting or delivering.
@@ -253,21 +385,192 @@ public final class Orders {
      * @param angle the angle of travel of the drone in this move.
      * @param toLongitude the longitude of the drone at the end of this move.
      * @param toLatitude the latitude of the drone at the end of this move.
+     * @param droneId the number of the drone in the fleet that made this move, starting from 1.
      */
-    public final void insertIntoFlightpath (String orderNo, double fromLongitude, double fromLatitude, int angle, double toLongitude, double toLatitude){
+    public final void insertIntoFlightpath (String orderNo, double fromLongitude, double fromLatitude, int angle, double toLongitude, double toLatitude, int droneId){
 
+        if (conn == null || orderFailed){
+            return;
+        }
+        long insertStart = Metrics.startTimer();
         try{
-            psFlightpath.setString(1, orderNo);
-            psFlightpath.setDouble(2, fromLongitude);
-            psFlightpath.setDouble(3, fromLatitude);
-            psFlightpath.setInt(4, angle);
-            psFlightpath.setDouble(5, toLongitude);
-            psFlightpath.setDouble(6, toLatitude);
-            psFlightpath.execute();
+            PreparedStatement ps = psFlightpath.getPreparedStatement();
+            ps.setString(1, orderNo);
+            ps.setDouble(2, fromLongitude);
+            ps.setDouble(3, fromLatitude);
+            ps.setInt(4, angle);
+            ps.setDouble(5, toLongitude);
+            ps.setDouble(6, toLatitude);
+            ps.setInt(7, droneId);
+            ps.setDate(8, fullDate);
+            psFlightpath.addRow();
         } catch (java.sql.SQLException e){
             e.printStackTrace();
+            orderFailed = true;
         }
+        Metrics.DERBY_FLIGHTPATH_INSERT.recordSince(insertStart);
     }
 
+    /**
+     *
+     * Method that writes every move in a drone's flight log to the flightpath table, using insertIntoFlightpath.
+     *
+     * @param orderNo the eight-character order number for the lunch order which the moves were made for, or null for
+     *                the final return to Appleton Tower.
+     * @param flightLog the flight log of the drone with the moves made for the order.
+     * @param droneId the number of the drone in the fleet that made the moves, starting from 1.
+     */
+    public final void insertFlightLogIntoFlightpath (String orderNo, FlightLog flightLog, int droneId){
+
+        for (int move = 0; move < flightLog.size(); move++){
+            insertIntoFlightpath(orderNo, flightLog.getFromLongitude(move), flightLog.getFromLatitude(move),
+                    flightLog.getAngle(move), flightLog.getToLongitude(move), flightLog.getToLatitude(move), droneId);
+        }
+    }
+
+    /**
+     *
+     * Method that commits every row written to the deliveries and flightpath tables since the last commit as one
+     * transaction.
+     * This is called once per delivered order, and once more for the drone's final return to Appleton Tower.
+     * Any rows still waiting in a batch are sent to the database first.
+     * If any row of the order could not be written (including a full batch sent while the order was being written), or
+     * the transaction fails, it is rolled back so that an order is never left half written in the tables.
+     */
+    public final void commitOrder(){
+
+        if (conn == null){
+            return;
+        }
+        long commitStart = Metrics.startTimer();
+        if (orderFailed){
+            System.err.println("Some of the rows of an order could not be written, so the order is rolled back.");
+            rollbackOrder();
+        } else {
+            try{
+                psDeliveries.flush();
+                psFlightpath.flush();
+                conn.commit();
+            } catch (java.sql.SQLException e){
+                e.printStackTrace();
+                rollbackOrder();
+            }
+        }
+        Metrics.DERBY_COMMIT.recordSince(commitStart);
+    }
+
+    /**
+     *
+     * Method that throws away every row written to the deliveries and flightpath tables since the last commit, both the
+     * ones still waiting in a batch and the ones already sent, so that the next order starts from a clean transaction.
+     */
+    private void rollbackOrder(){
+
+        orderFailed = false;
+        try{
+            psDeliveries.clear();
+            psFlightpath.clear();
+            conn.rollback();
+        } catch (java.sql.SQLException rollbackException){
+            rollbackException.printStackTrace();
+        }
+    }
+
+    /**
+     *
+     * Method that looks in the orders and orderDetails tables for orders placed on the date since the orders object was
+     * created (or since we last looked), so that they can be delivered the same day.
+     * This uses the same query as the constructor, on a connection of its own, and keeps every order we have not seen
+     * before. An order with no items yet is left for next time, since its items may not have been written yet.
+     * This is only ever called by one thread at a time.
+     *
+     * @return List of the orders placed since we last looked, which is empty if there are none.
+     */
+    public final List<PlacedOrder> pollNewOrders(){
+
+        List<PlacedOrder> placedOrders = new ArrayList<>();
+        if (dbPort == null){
+            return placedOrders;
+        }
+
+        try{
+
+            if (pollConn == null){
+                pollConn = DriverManager.getConnection("jdbc:derby://localhost:" + dbPort + "/derbyDB");
+            }
+
+            try (PreparedStatement psOrderQuery = pollConn.prepareStatement(ORDERS_QUERY)){
+                psOrderQuery.setDate(1, fullDate);
+
+                ResultSet rs = psOrderQuery.executeQuery();
+                PlacedOrder current = null;
+                while (rs.next()){
+                    String orderNo = rs.getString(1);
+                    if (orderNoDeliverToMap.containsKey(orderNo) || placedLaterDeliverToMap.containsKey(orderNo)){
+                        continue;
+                    }
+                    if (current == null || !current.orderNo.equals(orderNo)){
+                        current = new PlacedOrder(orderNo, rs.getString(2));
+                        placedOrders.add(current);
+                    }
+                    String item = rs.getString(3);
+                    if (item != null){
+                        current.items.add(item);
+                    }
+                }
+                rs.close();
+            }
+
+        } catch (java.sql.SQLException e){
+            e.printStackTrace();
+        }
+
+        placedOrders.removeIf(placedOrder -> placedOrder.items.isEmpty());
+        for (PlacedOrder placedOrder : placedOrders){
+            placedLaterDeliverToMap.put(placedOrder.orderNo, placedOrder.deliverTo);
+        }
+        return placedOrders;
+    }
+
+    /**
+     * Method that closes the connection to the database once every order of the day has been committed.
+     */
+    public final void close(){
+
+        try{
+            if (pollConn != null){
+                pollConn.close();
+            }
+            if (conn != null){
+                conn.close();
+            }
+        } catch (java.sql.SQLException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This class represents an order placed later in the day, found by the pollNewOrders method.
+     */
+    static final class PlacedOrder {
+
+        /**
+         * The eight-character hexadecimal string giving the unique order number of the order.
+         */
+        public final String orderNo;
+        /**
+         * The WhatThreeWords address of the delivery location.
+         */
+        public final String deliverTo;
+        /**
+         * The names of the items in the order.
+         */
+        public final List<String> items = new ArrayList<>();
+
+        private PlacedOrder(String orderNo, String deliverTo) {
+            this.orderNo = orderNo;
+            this.deliverTo = deliverTo;
+        }
+    }
 
 }
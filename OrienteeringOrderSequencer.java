@@ -0,0 +1,584 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * This class is the orienteering order sequencer: it plans the whole day as an orienteering problem, choosing the
+ * orders and the sequence to do them in so that the most pence are delivered within the drone's battery, ending at
+ * Appleton Tower.
+ *
+ * Every order is flown as its shops followed by its pickup location, so the cost of a day is:
+ * the legs between orders (from Appleton Tower or the last pickup location to the first shop of the next order),
+ * the moves within each order, and the way home from the last pickup location.
+ * All of these are flown once by dry-run drones (through the leg cost cache) before planning starts. A leg between
+ * orders only depends on the pickup location it starts from and the first shop it goes to, which many orders share,
+ * so each such leg is flown once, and only to the NEIGHBOURS first shops closest to each pickup location. The number
+ * of legs then grows linearly with the number of orders rather than with its square.
+ * Flying the legs is part of the time budget: if the budget runs out before they are all flown, the day is sequenced
+ * by the greedy sequencer instead.
+ *
+ * We build a first plan by inserting orders where they add the most value per extra move, then improve it with a
+ * local search (2-opt, swapping, moving, inserting and exchanging orders) run by one worker per thread of the common
+ * ForkJoin pool until the time budget is used up. The best plan of any worker is used.
+ * A plan is for the battery of one drone, so with a fleet every drone gets a plan of its own, made one after the other
+ * from the orders that the drones before it did not plan (see sequenceForDrones).
+ *
+ */
+final class OrienteeringOrderSequencer implements OrderSequencer {
+
+    /**
+     * Default time budget of the planning in milliseconds, which can be set with the ilp.sequencerTimeBudgetMillis
+     * system property.
+     */
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = Long.getLong("ilp.sequencerTimeBudgetMillis", 2000);
+    /**
+     * Moves kept back from the battery when planning, since the drone only gets close to each destination and so the
+     * moves it really makes can be a little different from the dry runs.
+     */
+    public static final int PLANNING_MARGIN = 20;
+    /**
+     * Number of local search steps in a row without an improvement after which a worker starts again from its best
+     * plan with some of the orders taken out.
+     */
+    public static final int STEPS_BEFORE_PERTURBING = 2000;
+    /**
+     * The number of first shops that legs are flown to from each pickup location, which are the ones closest to it.
+     * With no more shops than this, every leg between orders is flown. This can be set with the ilp.sequencerNeighbours
+     * system property.
+     */
+    public static final int NEIGHBOURS = Integer.getInteger("ilp.sequencerNeighbours", 20);
+    /**
+     * The moves given to a leg between orders that is not flown, which is more than any battery so that no plan uses it.
+     */
+    private static final int NOT_FLOWN_MOVES = 10 * Drone.MAX_BATTERY;
+
+    /**
+     * List of landmark points which the dry-run drones may divert toward.
+     */
+    private final List<Point> landmarkPoints;
+    /**
+     * Buildings object which contains the NFZ's the dry-run drones fly around.
+     */
+    private final Buildings buildings;
+    /**
+     * Time budget of the planning in milliseconds.
+     */
+    private final long timeBudgetMillis;
+
+    /**
+     * Constructor for class OrienteeringOrderSequencer.
+     *
+     * @param landmarkPoints List of landmark points which the dry-run drones may divert toward.
+     * @param buildings Buildings object which contains the NFZ's, the visibility graph and the leg cost cache.
+     * @param timeBudgetMillis Time budget of the planning in milliseconds, including flying the legs.
+     */
+    OrienteeringOrderSequencer(List<Point> landmarkPoints, Buildings buildings, long timeBudgetMillis) {
+        this.landmarkPoints = landmarkPoints;
+        this.buildings = buildings;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Method that plans the day for one drone and returns the planned orders in sequence, followed by every other
+     * order from the most valuable, in case the drone has moves left over for them.
+     *
+     * @param ordersSortedByValue Linked hash map of every order number to its cost in pence, most valuable first.
+     * @param tourOfOrder Function that gives the destinations of an order when it is started from Appleton Tower.
+     * @return List of every order number, in the sequence they should be attempted in.
+     */
+    @Override
+    public List<String> sequence(Map<String, Integer> ordersSortedByValue, Function<String, List<LongLat>> tourOfOrder) {
+        return sequenceForDrones(ordersSortedByValue, tourOfOrder, 1).get(0);
+    }
+
+    /**
+     * Method that plans the day for every drone of a fleet.
+     * The tours and legs of the orders are flown once, and then the drones are planned one after the other, each with
+     * an equal share of the time left and only the orders that no drone before it planned. Every drone's sequence is
+     * its planned orders, followed by its share of the orders that no drone planned, dealt out in turn from the most
+     * valuable, in case the drones have moves left over for them.
+     * If the time budget runs out before every order's tour and legs are known, the sequence of the greedy sequencer
+     * is dealt out in turn instead.
+     *
+     * @param ordersSortedByValue Linked hash map of every order number to its cost in pence, most valuable first.
+     * @param tourOfOrder Function that gives the destinations of an order when it is started from Appleton Tower.
+     * @param droneCount The number of drones in the fleet.
+     * @return List of the sequence of every drone, which between them have every order number once.
+     */
+    @Override
+    public List<List<String>> sequenceForDrones(Map<String, Integer> ordersSortedByValue,
+                                                Function<String, List<LongLat>> tourOfOrder, int droneCount) {
+
+        long deadline = System.nanoTime() + timeBudgetMillis * 1_000_000;
+
+        List<String> orderNos = new ArrayList<>(ordersSortedByValue.keySet());
+        int orderCount = orderNos.size();
+        List<List<LongLat>> tours = new ArrayList<>();
+        int[] values = new int[orderCount];
+        for (int i = 0; i < orderCount; i++) {
+            if (System.nanoTime() > deadline) {
+                return new GreedyOrderSequencer().sequenceForDrones(ordersSortedByValue, tourOfOrder, droneCount);
+            }
+            tours.add(tourOfOrder.apply(orderNos.get(i)));
+            values[i] = ordersSortedByValue.get(orderNos.get(i));
+        }
+
+        Costs costs = flyLegs(tours, deadline);
+        if (costs == null) {
+            return new GreedyOrderSequencer().sequenceForDrones(ordersSortedByValue, tourOfOrder, droneCount);
+        }
+
+        boolean[] available = new boolean[orderCount];
+        Arrays.fill(available, true);
+        List<List<String>> droneSequences = new ArrayList<>();
+        for (int drone = 0; drone < droneCount; drone++) {
+            long now = System.nanoTime();
+            long droneDeadline = now + Math.max(0, deadline - now) / (droneCount - drone);
+            Plan best = bestPlan(values, costs, available, droneDeadline);
+
+            List<String> sequence = new ArrayList<>();
+            for (int i = 0; i < best.size; i++) {
+                sequence.add(orderNos.get(best.orders[i]));
+                available[best.orders[i]] = false;
+            }
+            droneSequences.add(sequence);
+        }
+
+        int next = 0;
+        for (int i = 0; i < orderCount; i++) {
+            if (available[i]) {
+                droneSequences.get(next++ % droneCount).add(orderNos.get(i));
+            }
+        }
+        return droneSequences;
+    }
+
+    /**
+     * Method that plans one drone's battery from the orders available to it: a first plan is built by greedy insertion
+     * and then improved by one local search worker per thread of the common ForkJoin pool until the deadline.
+     *
+     * @param values The value of every order.
+     * @param costs Costs object with the number of moves of every leg.
+     * @param available Whether each order can be planned, which is not changed.
+     * @param deadline Value of System.nanoTime at which to stop.
+     * @return The best plan of any worker.
+     */
+    private static Plan bestPlan(int[] values, Costs costs, boolean[] available, long deadline) {
+
+        int availableCount = 0;
+        for (boolean orderAvailable : available) {
+            if (orderAvailable) {
+                availableCount++;
+            }
+        }
+        Plan firstPlan = new Plan(values, costs, available.clone(), availableCount, Drone.MAX_BATTERY - PLANNING_MARGIN);
+        firstPlan.insertGreedily();
+
+        int workers = ForkJoinPool.commonPool().getParallelism();
+        return IntStream.range(0, workers).parallel()
+                .mapToObj(worker -> localSearch(firstPlan, new Random(worker), deadline))
+                .max(Comparator.comparingInt((Plan plan) -> plan.value).thenComparingInt(plan -> -plan.moves))
+                .orElse(firstPlan);
+    }
+
+    /**
+     * Method that flies the legs of the day with dry-run drones, in parallel: every order's own moves and way home,
+     * the legs from Appleton Tower to every first shop, and the legs from every pickup location to its nearest first
+     * shops (see nearestFirstShops). Every other leg between orders is given NOT_FLOWN_MOVES.
+     * The deadline is checked before each leg, and once it has passed no more legs are flown.
+     *
+     * @param tours List of the destinations of every order.
+     * @param deadline Value of System.nanoTime at which to stop.
+     * @return Costs object with the number of moves of every leg, or null if the deadline passed first.
+     */
+    private Costs flyLegs(List<List<LongLat>> tours, long deadline) {
+
+        int orderCount = tours.size();
+        List<LongLat> pickups = new ArrayList<>();
+        List<LongLat> firstShops = new ArrayList<>();
+        int[] pickupOf = new int[orderCount];
+        int[] firstShopOf = new int[orderCount];
+        Map<Point2D, Integer> pickupIndexes = new HashMap<>();
+        Map<Point2D, Integer> firstShopIndexes = new HashMap<>();
+        for (int i = 0; i < orderCount; i++) {
+            pickupOf[i] = indexOf(tours.get(i).get(tours.get(i).size() - 1), pickups, pickupIndexes);
+            firstShopOf[i] = indexOf(tours.get(i).get(0), firstShops, firstShopIndexes);
+        }
+
+        Costs costs = new Costs(pickupOf, firstShopOf, pickups.size(), firstShops.size());
+        AtomicBoolean outOfTime = new AtomicBoolean();
+
+        IntStream.range(0, orderCount).parallel().forEach(i -> {
+            if (outOfTime.get() || System.nanoTime() > deadline) {
+                outOfTime.set(true);
+                return;
+            }
+            List<LongLat> tour = tours.get(i);
+            Drone testDrone = Drone.dryRun(tour.get(0));
+            testDrone.algorithm(landmarkPoints, tour.subList(1, tour.size()), buildings);
+            costs.withinOrder[i] = testDrone.getMoves();
+
+            Drone homeDrone = Drone.dryRun(tour.get(tour.size() - 1));
+            homeDrone.algorithmEnd(landmarkPoints, buildings);
+            costs.home[i] = homeDrone.getMoves();
+        });
+
+        if (outOfTime.get()) {
+            return null;
+        }
+
+        //The last row of the table is for the legs from Appleton Tower, which go to every first shop.
+        int[] everyFirstShop = IntStream.range(0, firstShops.size()).toArray();
+        IntStream.range(0, pickups.size() + 1).parallel().forEach(row -> {
+            boolean fromAppletonTower = row == pickups.size();
+            LongLat start = fromAppletonTower ? Drone.appletonTower : pickups.get(row);
+            for (int column : fromAppletonTower ? everyFirstShop : nearestFirstShops(start, firstShops)) {
+                if (outOfTime.get() || System.nanoTime() > deadline) {
+                    outOfTime.set(true);
+                    return;
+                }
+                Drone testDrone = Drone.dryRun(start);
+                testDrone.algorithm(landmarkPoints, List.of(firstShops.get(column)), buildings);
+                costs.legMoves[row][column] = testDrone.getMoves();
+            }
+        });
+
+        return outOfTime.get() ? null : costs;
+    }
+
+    /**
+     * Method that gives the index of a position in a list of distinct positions, adding it to the list if it is not
+     * there yet.
+     *
+     * @param position LongLat object of the position.
+     * @param positions List of the distinct positions so far.
+     * @param indexes Hash map of every position in the list to its index.
+     * @return Index of the position in the list.
+     */
+    private static int indexOf(LongLat position, List<LongLat> positions, Map<Point2D, Integer> indexes) {
+        return indexes.computeIfAbsent(new Point2D.Double(position.lng, position.lat), key -> {
+            positions.add(position);
+            return positions.size() - 1;
+        });
+    }
+
+    /**
+     * Method that finds the NEIGHBOURS first shops (or every first shop, if there are fewer) closest to a position, in a
+     * straight line.
+     *
+     * @param start LongLat object of the position.
+     * @param firstShops List of the distinct first shops of the orders.
+     * @return Array of the indexes of the nearest first shops.
+     */
+    private static int[] nearestFirstShops(LongLat start, List<LongLat> firstShops) {
+        return IntStream.range(0, firstShops.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer shop) -> start.distanceTo(firstShops.get(shop))))
+                .limit(NEIGHBOURS)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Method that improves a plan with random local search steps until the deadline, always keeping the plan within
+     * the battery. A step is kept if it delivers more value, or the same value in fewer moves.
+     * When no step has helped for a while, we go back to the best plan so far, take some orders out of it and insert
+     * orders again, so the search does not stay stuck on the same plan.
+     *
+     * @param firstPlan The plan to start from, which is not changed.
+     * @param random Random numbers used to pick the steps.
+     * @param deadline Value of System.nanoTime at which to stop.
+     * @return The best plan found.
+     */
+    private static Plan localSearch(Plan firstPlan, Random random, long deadline) {
+
+        Plan best = firstPlan.copy();
+        Plan current = firstPlan.copy();
+        int stepsWithoutImprovement = 0;
+
+        while (System.nanoTime() < deadline) {
+
+            Plan candidate = current.copy();
+            candidate.randomStep(random);
+
+            if (candidate.moves <= candidate.battery && candidate.isBetterThan(current)) {
+                current = candidate;
+                if (current.isBetterThan(best)) {
+                    best = current.copy();
+                }
+                stepsWithoutImprovement = 0;
+            } else if (++stepsWithoutImprovement > STEPS_BEFORE_PERTURBING) {
+                current = best.copy();
+                current.perturb(random);
+                current.insertGreedily();
+                stepsWithoutImprovement = 0;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This class holds the number of moves of every leg of the day.
+     */
+    private static final class Costs {
+
+        /**
+         * Moves from the first shop of an order, through its other shops, to its pickup location.
+         */
+        private final int[] withinOrder;
+        /**
+         * Moves from the pickup location of an order back to Appleton Tower.
+         */
+        private final int[] home;
+        /**
+         * Row of the table of legs of the pickup location of every order, and column of its first shop.
+         */
+        private final int[] pickupOf;
+        private final int[] firstShopOf;
+        /**
+         * Moves from each distinct pickup location (or Appleton Tower, for the last row) to each distinct first shop,
+         * or NOT_FLOWN_MOVES for a leg that was not flown.
+         */
+        private final int[][] legMoves;
+
+        private Costs(int[] pickupOf, int[] firstShopOf, int pickupCount, int firstShopCount) {
+            this.pickupOf = pickupOf;
+            this.firstShopOf = firstShopOf;
+            withinOrder = new int[pickupOf.length];
+            home = new int[pickupOf.length];
+            legMoves = new int[pickupCount + 1][firstShopCount];
+            for (int[] row : legMoves) {
+                Arrays.fill(row, NOT_FLOWN_MOVES);
+            }
+        }
+
+        /**
+         * Method that gives the moves from the pickup location of one order to the first shop of another.
+         * @param from Index of the order flown from, or the number of orders for Appleton Tower.
+         * @param to Index of the order flown to.
+         * @return Number of moves of the leg, or NOT_FLOWN_MOVES if it was not flown.
+         */
+        private int between(int from, int to) {
+            int row = from == pickupOf.length ? legMoves.length - 1 : pickupOf[from];
+            return legMoves[row][firstShopOf[to]];
+        }
+    }
+
+    /**
+     * This class is a plan of the day: the orders to do, in sequence, with their total value and moves.
+     */
+    private static final class Plan {
+
+        private final int[] values;
+        private final Costs costs;
+        private final int battery;
+        /**
+         * Whether each order can be planned, and how many can, since orders planned by another drone cannot.
+         */
+        private final boolean[] available;
+        private final int availableCount;
+
+        /**
+         * The planned orders in sequence, in the first size entries.
+         */
+        private final int[] orders;
+        private final boolean[] planned;
+        private int size;
+        private int value;
+        private int moves;
+
+        private Plan(int[] values, Costs costs, boolean[] available, int availableCount, int battery) {
+            this.values = values;
+            this.costs = costs;
+            this.available = available;
+            this.availableCount = availableCount;
+            this.battery = battery;
+            this.orders = new int[values.length];
+            this.planned = new boolean[values.length];
+        }
+
+        private Plan copy() {
+            Plan plan = new Plan(values, costs, available, availableCount, battery);
+            System.arraycopy(orders, 0, plan.orders, 0, size);
+            System.arraycopy(planned, 0, plan.planned, 0, planned.length);
+            plan.size = size;
+            plan.value = value;
+            plan.moves = moves;
+            return plan;
+        }
+
+        private boolean isBetterThan(Plan other) {
+            return value > other.value || (value == other.value && moves < other.moves);
+        }
+
+        /**
+         * Method that works out the value and moves of the plan again after its orders have changed.
+         */
+        private void evaluate() {
+            value = 0;
+            moves = 0;
+            int from = values.length;
+            for (int i = 0; i < size; i++) {
+                int order = orders[i];
+                value += values[order];
+                moves += costs.between(from, order) + costs.withinOrder[order];
+                from = order;
+            }
+            if (size > 0) {
+                moves += costs.home[from];
+            }
+        }
+
+        /**
+         * Method that works out how many moves the plan would have with an order inserted at a position, without
+         * inserting it.
+         */
+        private int movesWithInserted(int order, int position) {
+            int from = position == 0 ? values.length : orders[position - 1];
+            int extra = costs.between(from, order) + costs.withinOrder[order];
+            if (position < size) {
+                int to = orders[position];
+                extra += costs.between(order, to) - costs.between(from, to);
+            } else {
+                extra += costs.home[order] - (size > 0 ? costs.home[from] : 0);
+            }
+            return moves + extra;
+        }
+
+        private void insert(int order, int position) {
+            System.arraycopy(orders, position, orders, position + 1, size - position);
+            orders[position] = order;
+            planned[order] = true;
+            size++;
+        }
+
+        private void remove(int position) {
+            planned[orders[position]] = false;
+            System.arraycopy(orders, position + 1, orders, position, size - position - 1);
+            size--;
+        }
+
+        /**
+         * Method that keeps inserting the order that adds the most value per extra move, at the position where it
+         * adds the fewest moves, until no order fits in the battery any more.
+         */
+        private void insertGreedily() {
+
+            evaluate();
+            while (true) {
+                int bestOrder = -1;
+                int bestPosition = -1;
+                double bestRatio = -1;
+                for (int order = 0; order < values.length; order++) {
+                    if (planned[order] || !available[order]) {
+                        continue;
+                    }
+                    for (int position = 0; position <= size; position++) {
+                        int newMoves = movesWithInserted(order, position);
+                        double ratio = (double) values[order] / Math.max(1, newMoves - moves);
+                        if (newMoves <= battery && ratio > bestRatio) {
+                            bestOrder = order;
+                            bestPosition = position;
+                            bestRatio = ratio;
+                        }
+                    }
+                }
+                if (bestOrder == -1) {
+                    return;
+                }
+                insert(bestOrder, bestPosition);
+                evaluate();
+            }
+        }
+
+        /**
+         * Method that makes one random local search step: reversing a stretch of the sequence (2-opt), swapping two
+         * planned orders, moving a planned order, inserting an unplanned order, or exchanging a planned order for an
+         * unplanned one.
+         */
+        private void randomStep(Random random) {
+
+            int unplanned = availableCount - size;
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (size >= 2) {
+                        int i = random.nextInt(size);
+                        int j = random.nextInt(size);
+                        for (int low = Math.min(i, j), high = Math.max(i, j); low < high; low++, high--) {
+                            int order = orders[low];
+                            orders[low] = orders[high];
+                            orders[high] = order;
+                        }
+                    }
+                    break;
+                case 1:
+                    if (size >= 2) {
+                        int i = random.nextInt(size);
+                        int j = random.nextInt(size);
+                        int order = orders[i];
+                        orders[i] = orders[j];
+                        orders[j] = order;
+                    }
+                    break;
+                case 2:
+                    if (size >= 2) {
+                        int position = random.nextInt(size);
+                        int order = orders[position];
+                        remove(position);
+                        insert(order, random.nextInt(size + 1));
+                    }
+                    break;
+                case 3:
+                    if (unplanned > 0) {
+                        insert(randomUnplanned(random), random.nextInt(size + 1));
+                    }
+                    break;
+                default:
+                    if (size >= 1 && unplanned > 0) {
+                        int position = random.nextInt(size);
+                        int order = randomUnplanned(random);
+                        remove(position);
+                        insert(order, position);
+                    }
+                    break;
+            }
+            evaluate();
+        }
+
+        /**
+         * Method that takes a few random orders out of the plan.
+         */
+        private void perturb(Random random) {
+            int removals = 1 + random.nextInt(Math.max(1, size / 3));
+            for (int i = 0; i < removals && size > 0; i++) {
+                remove(random.nextInt(size));
+            }
+            evaluate();
+        }
+
+        private int randomUnplanned(Random random) {
+            int skip = random.nextInt(availableCount - size);
+            for (int order = 0; order < values.length; order++) {
+                if (available[order] && !planned[order] && skip-- == 0) {
+                    return order;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
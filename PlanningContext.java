@@ -0,0 +1,190 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *
+ * This class is everything a drone needs to plan its orders: the map (buildings and landmarks), the catalog (menus)
+ * and, for a given day, the orders placed on that day with their values, items and delivery locations.
+ *
+ * A planning context cannot be changed once it is created, and neither can anything it holds, so any number of days
+ * and drones can plan with the same one at the same time without locks. The context shared by every day is created
+ * once from the menus and buildings, and the context of each day is derived from it with forOrders, which leaves the
+ * shared context as it was. Orders placed later in the day are added in the same way, with withPlacedOrders.
+ * Writing the deliveries and flightpath rows is not part of planning, so the orders object itself (which holds the
+ * connection to the database) is not kept in the context.
+ *
+ */
+final class PlanningContext {
+
+    /**
+     * Buildings object which contains the NFZ's and landmarks.
+     */
+    public final Buildings buildings;
+    /**
+     * Menus object which finds the shops and prices of the items of each order.
+     */
+    public final Menus menu;
+    /**
+     * List of points which contains the locations of all the landmarks and Appleton Tower, which cannot be changed.
+     */
+    public final List<Point> landmarkPoints;
+
+    /**
+     * The day of the orders, or null for the context shared by every day.
+     */
+    public final Date day;
+    /**
+     * Hash map of every order number of the day to its cost in pence, with the most valuable orders first, which cannot
+     * be changed. This is empty for the context shared by every day.
+     */
+    public final Map<String, Integer> ordersSortedByValue;
+    /**
+     * Hash map of every order number of the day to its delivery location, which cannot be changed.
+     */
+    public final Map<String, LongLat> orderNoToDeliverToLongLat;
+    /**
+     * Hash map of every order number of the day to the names of the items in the order, which cannot be changed.
+     */
+    private final Map<String, Collection<String>> orderItemNames;
+
+    /**
+     * Constructor for class PlanningContext, for the context shared by every day, which has no orders.
+     * Appleton Tower is added to a copy of the landmarks of the buildings, since the drones can divert toward it too.
+     *
+     * @param menu Menus object shared by every day.
+     * @param buildings Buildings object shared by every day.
+     */
+    PlanningContext(Menus menu, Buildings buildings) {
+        this(menu, buildings, withAppletonTower(buildings.landmarkPoints), null, Map.of(), Map.of(), Map.of());
+    }
+
+    private PlanningContext(Menus menu, Buildings buildings, List<Point> landmarkPoints, Date day,
+                            Map<String, Integer> ordersSortedByValue, Map<String, LongLat> orderNoToDeliverToLongLat,
+                            Map<String, Collection<String>> orderItemNames) {
+        this.menu = menu;
+        this.buildings = buildings;
+        this.landmarkPoints = landmarkPoints;
+        this.day = day;
+        this.ordersSortedByValue = ordersSortedByValue;
+        this.orderNoToDeliverToLongLat = orderNoToDeliverToLongLat;
+        this.orderItemNames = orderItemNames;
+    }
+
+    /**
+     * Method that creates the context of one day from this one, with the orders placed on that day.
+     * The value, items and delivery location of every order are copied out of the orders object, waiting for the
+     * delivery locations to be resolved.
+     *
+     * @param orders Orders object of the day.
+     * @param webPort The port the web server is running on, which the W3W delivery locations are resolved with.
+     * @return PlanningContext of the day, with the same menus, buildings and landmarks as this one.
+     */
+    public PlanningContext forOrders(Orders orders, String webPort) {
+        return forOrders(orders, orders.getOrderNoToDeliverToLongLat(webPort));
+    }
+
+    /**
+     * Method that creates the context of one day from this one, with the orders placed on that day and delivery
+     * locations that have already been resolved (such as the ones in a day snapshot).
+     *
+     * @param orders Orders object of the day.
+     * @param orderNoToDeliverToLongLat Hash map of every order number of the day to its delivery location.
+     * @return PlanningContext of the day, with the same menus, buildings and landmarks as this one.
+     */
+    public PlanningContext forOrders(Orders orders, Map<String, LongLat> orderNoToDeliverToLongLat) {
+
+        Map<String, Collection<String>> itemNames = new HashMap<>();
+        for (String orderNo : orders.orderNoList) {
+            itemNames.put(orderNo, List.copyOf(orders.getItemNamesFromOrder(orderNo)));
+        }
+
+        return new PlanningContext(menu, buildings, landmarkPoints, orders.fullDate,
+                Collections.unmodifiableMap(new LinkedHashMap<>(orders.getOrderedValuableOrdersToCostMap(menu))),
+                Collections.unmodifiableMap(new HashMap<>(orderNoToDeliverToLongLat)),
+                Collections.unmodifiableMap(itemNames));
+    }
+
+    /**
+     * Method that creates a context from this one with orders placed later in the day added to it.
+     * Only the new orders are looked at: their values are worked out and their delivery locations are resolved (all at
+     * the same time), and the maps of this context are copied with them added. The orders are then sorted by value
+     * again, the same way as Orders.getOrderedValuableOrdersToCostMap, so they are still the most valuable first.
+     *
+     * @param placedOrders List of the orders placed since this context was created.
+     * @param webPort The port the web server is running on, which the W3W delivery locations are resolved with.
+     * @return PlanningContext with the orders of this one and the new ones.
+     */
+    public PlanningContext withPlacedOrders(List<Orders.PlacedOrder> placedOrders, String webPort) {
+
+        Map<String, CompletableFuture<LongLat>> deliverToLongLats = new HashMap<>();
+        for (Orders.PlacedOrder placedOrder : placedOrders) {
+            deliverToLongLats.put(placedOrder.orderNo, Words.resolveAsync(webPort, placedOrder.deliverTo.split("\\.")));
+        }
+
+        Map<String, Integer> values = new LinkedHashMap<>(ordersSortedByValue);
+        Map<String, LongLat> deliverTo = new HashMap<>(orderNoToDeliverToLongLat);
+        Map<String, Collection<String>> itemNames = new HashMap<>(orderItemNames);
+        for (Orders.PlacedOrder placedOrder : placedOrders) {
+            values.put(placedOrder.orderNo, menu.getDeliveryCost(placedOrder.items));
+            deliverTo.put(placedOrder.orderNo, deliverToLongLats.get(placedOrder.orderNo).join());
+            itemNames.put(placedOrder.orderNo, List.copyOf(placedOrder.items));
+        }
+
+        List<Map.Entry<String, Integer>> sortedValues = new ArrayList<>(values.entrySet());
+        sortedValues.sort((o1, o2) -> o2.getValue().compareTo(o1.getValue()) == 0
+                ? o2.getKey().compareTo(o1.getKey())
+                : o2.getValue().compareTo(o1.getValue()));
+        Map<String, Integer> sortedByValue = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : sortedValues) {
+            sortedByValue.put(entry.getKey(), entry.getValue());
+        }
+
+        return new PlanningContext(menu, buildings, landmarkPoints, day, Collections.unmodifiableMap(sortedByValue),
+                Collections.unmodifiableMap(deliverTo), Collections.unmodifiableMap(itemNames));
+    }
+
+    /**
+     * Getter for the names of the items in an order.
+     * @param orderNo The order number.
+     * @return Collection of the names of the items in the order, which cannot be changed.
+     */
+    public Collection<String> getItemNamesFromOrder(String orderNo) {
+        return orderItemNames.get(orderNo);
+    }
+
+    /**
+     * Method that finds the best route for an order from a given position: the shops of the order in the best order
+     * to visit them (see Menus.getTspShopsToVisitLongLatList), followed by the delivery location.
+     *
+     * @param start LongLat object of the position the order is started from.
+     * @param orderNo The order number.
+     * @return List of LongLat objects which the drone visits in order to complete the order.
+     */
+    public List<LongLat> tourOfOrder(LongLat start, String orderNo) {
+        return menu.getTspShopsToVisitLongLatList(start, menu.shopsArrayFromItems(getItemNamesFromOrder(orderNo)),
+                orderNoToDeliverToLongLat.get(orderNo), landmarkPoints, buildings);
+    }
+
+    /**
+     * Method that creates a list of landmarks with Appleton Tower added at the end, which cannot be changed.
+     * @param landmarks List of the landmarks as point objects.
+     * @return List of the landmarks and Appleton Tower.
+     */
+    public static List<Point> withAppletonTower(List<Point> landmarks) {
+        List<Point> points = new ArrayList<>(landmarks);
+        points.add(Point.fromLngLat(Drone.appletonTower.lng, Drone.appletonTower.lat));
+        return Collections.unmodifiableList(points);
+    }
+
+}
@@ -0,0 +1,35 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+
+/**
+ * This class checks a line segment against a run of segments one at a time.
+ * The bounding box of each segment is compared with that of the line segment first, and only the segments whose
+ * boxes overlap it are tested with Line2D.linesIntersect. Two segments can only meet where their bounding boxes
+ * overlap, so this never changes the answer. The one exception is a line segment of zero length, which
+ * Line2D.linesIntersect counts as intersecting every edge of zero length wherever it is, so then every edge is tested.
+ * This is the kernel used when the Vector API is not there, and the Vector API kernel falls back on it for the
+ * segments it cannot decide itself.
+ */
+final class ScalarIntersectionKernel implements IntersectionKernel {
+
+    @Override
+    public boolean anyIntersects(EdgeArrays edges, int from, int to, double ax, double ay, double bx, double by) {
+
+        double lineMinX = Math.min(ax, bx);
+        double lineMaxX = Math.max(ax, bx);
+        double lineMinY = Math.min(ay, by);
+        double lineMaxY = Math.max(ay, by);
+        boolean zeroLength = ax == bx && ay == by;
+
+        for (int i = from; i < to; i++) {
+            if (!zeroLength && (edges.maxX[i] < lineMinX || edges.minX[i] > lineMaxX || edges.maxY[i] < lineMinY || edges.minY[i] > lineMaxY)) {
+                continue;
+            }
+            if (Line2D.linesIntersect(edges.x1[i], edges.y1[i], edges.x2[i], edges.y2[i], ax, ay, bx, by)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class represents a randomly generated map of no-fly-zones and landmarks, used to test and benchmark the drone
+ * on maps far bigger than the real one.
+ * The map is split into a grid of square cells centred on the drone confinement area, and each NFZ is a small random
+ * convex polygon in its own cell, so there is always room for the drone to fly between them.
+ * The grid has about twice as many cells as NFZ's. Cells are the size of the real NFZ's for as long as the grid fits in
+ * the confinement area, and are made smaller (with the NFZ's in them) once it would not, so that every NFZ is where the
+ * drone flies and a map with 100 times as many NFZ's really has 100 times as many to route around.
+ * The same seed always gives the same map.
+ */
+final class SyntheticMap {
+
+    /**
+     * The drone confinement area, which positions for shops, delivery locations and landmarks are taken from.
+     */
+    public static final double MIN_LNG = -3.192473;
+    public static final double MAX_LNG = -3.184319;
+    public static final double MIN_LAT = 55.942617;
+    public static final double MAX_LAT = 55.946233;
+
+    /**
+     * The largest width and height (in degrees) of a cell of the grid, which is about the size of the real NFZ's.
+     */
+    public static final double CELL_SIZE = 0.0008;
+
+    /**
+     * The NFZ's of the map as polygon objects.
+     */
+    public final List<Polygon> nfzPolygons = new ArrayList<>();
+    /**
+     * The landmarks of the map as point objects.
+     */
+    public final List<Point> landmarks = new ArrayList<>();
+
+    /**
+     * Shapes of every NFZ, used to check that generated positions are outside all of them.
+     */
+    private final List<Path2D> nfzShapes = new ArrayList<>();
+
+    /**
+     * Constructor for class SyntheticMap.
+     * We choose the size of the cells so that the grid fits in the confinement area, then pick a random cell of the grid
+     * for every NFZ (never the cell Appleton Tower is in) and put a random convex polygon in it, well inside the cell.
+     * We then add landmarks at random positions in the confinement area that are outside every NFZ.
+     *
+     * @param nfzCount The number of NFZ's on the map.
+     * @param landmarkCount The number of landmarks on the map.
+     * @param seed The seed of the random numbers used to generate the map.
+     */
+    SyntheticMap(int nfzCount, int landmarkCount, long seed) {
+
+        Random random = new Random(seed);
+
+        int cells = Math.max(2, 2 * nfzCount);
+        double aspectRatio = (MAX_LNG - MIN_LNG) / (MAX_LAT - MIN_LAT);
+        int columns = (int) Math.ceil(Math.sqrt(cells * aspectRatio));
+        int rows = (int) Math.ceil((double) cells / columns);
+        double cellSize = Math.min(CELL_SIZE, Math.min((MAX_LNG - MIN_LNG) / columns, (MAX_LAT - MIN_LAT) / rows));
+        double originLng = (MIN_LNG + MAX_LNG) / 2 - columns * cellSize / 2;
+        double originLat = (MIN_LAT + MAX_LAT) / 2 - rows * cellSize / 2;
+
+        int appletonCell = (int) Math.floor((Drone.appletonTower.lat - originLat) / cellSize) * columns
+                + (int) Math.floor((Drone.appletonTower.lng - originLng) / cellSize);
+
+        List<Integer> freeCells = new ArrayList<>();
+        for (int cell = 0; cell < columns * rows; cell++) {
+            if (cell != appletonCell) {
+                freeCells.add(cell);
+            }
+        }
+        Collections.shuffle(freeCells, random);
+
+        for (int i = 0; i < Math.min(nfzCount, freeCells.size()); i++) {
+            int cell = freeCells.get(i);
+            double centreLng = originLng + (cell % columns + 0.5 + (random.nextDouble() - 0.5) * 0.2) * cellSize;
+            double centreLat = originLat + (cell / columns + 0.5 + (random.nextDouble() - 0.5) * 0.2) * cellSize;
+            addNfz(centreLng, centreLat, cellSize, random);
+        }
+
+        for (int i = 0; i < landmarkCount; i++) {
+            LongLat landmark = randomFreePosition(random);
+            landmarks.add(Point.fromLngLat(landmark.lng, landmark.lat));
+        }
+    }
+
+    /**
+     * Method that adds a random convex polygon of 4 to 7 corners around a centre to the map.
+     * The corners are at increasing angles around the centre, so the polygon never crosses itself.
+     *
+     * @param centreLng Longitude of the centre of the polygon.
+     * @param centreLat Latitude of the centre of the polygon.
+     * @param cellSize The width and height (in degrees) of the cell the polygon is in.
+     * @param random Random numbers used to generate the polygon.
+     */
+    private void addNfz(double centreLng, double centreLat, double cellSize, Random random) {
+
+        int corners = 4 + random.nextInt(4);
+        double[] angles = new double[corners];
+        for (int i = 0; i < corners; i++) {
+            angles[i] = (i + random.nextDouble() * 0.8) * 2 * Math.PI / corners;
+        }
+        double radius = cellSize * (0.2 + random.nextDouble() * 0.15);
+
+        List<Point> ring = new ArrayList<>();
+        Path2D shape = new Path2D.Double();
+        for (int i = 0; i < corners; i++) {
+            double lng = centreLng + radius * Math.cos(angles[i]);
+            double lat = centreLat + radius * Math.sin(angles[i]);
+            ring.add(Point.fromLngLat(lng, lat));
+            if (i == 0) {
+                shape.moveTo(lng, lat);
+            } else {
+                shape.lineTo(lng, lat);
+            }
+        }
+        //The last point of a GeoJson polygon ring is the same as the first.
+        ring.add(ring.get(0));
+        shape.closePath();
+
+        List<List<Point>> rings = new ArrayList<>();
+        rings.add(ring);
+        nfzPolygons.add(Polygon.fromLngLats(rings));
+        nfzShapes.add(shape);
+    }
+
+    /**
+     * Method that checks whether a position is inside any NFZ of the map.
+     * @param lng Longitude of the position.
+     * @param lat Latitude of the position.
+     * @return Boolean value true if the position is inside a NFZ.
+     */
+    public boolean insideNfz(double lng, double lat) {
+        for (Path2D shape : nfzShapes) {
+            if (shape.contains(lng, lat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that picks a random position in the confinement area that is outside every NFZ, for use as a shop,
+     * delivery location or landmark.
+     *
+     * @param random Random numbers used to pick the position.
+     * @return LongLat object of the position.
+     */
+    public LongLat randomFreePosition(Random random) {
+        while (true) {
+            double lng = MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG);
+            double lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+            if (!insideNfz(lng, lat)) {
+                return new LongLat(lng, lat);
+            }
+        }
+    }
+}
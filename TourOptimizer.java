@@ -0,0 +1,231 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * This class finds the best order to visit the shops of an order in, before going to its pickup location.
+ * For a few shops (up to MAX_SHOPS_FLOWN_WHOLE) every order of the shops is flown whole by a dry-run drone from the
+ * real start, so the order chosen is the one that really takes the fewest moves.
+ * For more shops, flying every order is too slow, so we work out the number of moves of every leg between the current
+ * position, the shops and the pickup location, then find the cheapest order of the shops with the Held-Karp dynamic
+ * programming algorithm over subsets of the shops. Each leg is flown from the shop itself rather than from where the
+ * drone gets to near it, so this is exact for the table but can be a few moves off for the real flight.
+ *
+ */
+final class TourOptimizer {
+
+    /**
+     * The most shops for which every order of the shops is flown whole, which is at most 3! = 6 tours.
+     */
+    public static final int MAX_SHOPS_FLOWN_WHOLE = 3;
+
+    /**
+     * List of landmark points which the dry-run drones may divert toward.
+     */
+    private final List<Point> landmarkPoints;
+    /**
+     * Buildings object which contains the NFZ's the dry-run drones fly around.
+     */
+    private final Buildings buildings;
+
+    /**
+     * Constructor for class TourOptimizer.
+     * @param landmarkPoints List of landmark points which the dry-run drones may divert toward.
+     * @param buildings Buildings object which contains the NFZ's, the visibility graph and the leg cost cache.
+     */
+    TourOptimizer(List<Point> landmarkPoints, Buildings buildings) {
+        this.landmarkPoints = landmarkPoints;
+        this.buildings = buildings;
+    }
+
+    /**
+     *
+     * Method that finds the order of shops with the fewest moves from a start position, through every shop, to the
+     * pickup location.
+     * With at most MAX_SHOPS_FLOWN_WHOLE shops, this is done by flying every tour (see shortestFlownTour).
+     *
+     * Otherwise, the positions are numbered 0 for the start, 1 to n for the shops and n + 1 for the pickup location.
+     * We fill in a table with the number of moves of every leg we could fly (from the start to a shop, between two
+     * shops and from a shop to the pickup location). Each leg is flown by its own dry-run drone, and the legs are
+     * spread over the common ForkJoin pool since they do not depend on each other.
+     *
+     * Then, for every subset of the shops and every shop in it, Held-Karp works out the fewest moves to visit exactly
+     * that subset ending at that shop, from the answers for the smaller subsets. This takes 2^n * n^2 steps on the
+     * table, which is nothing next to flying the legs for the number of shops an order has.
+     *
+     * @param start LongLat object of the position the order is started from.
+     * @param shops List of LongLat objects of the shops to visit, in any order.
+     * @param deliverTo LongLat object of the pickup location, which is always visited last.
+     * @return List of LongLat objects of the shops in the best order, followed by the pickup location.
+     */
+    List<LongLat> shortestTour(LongLat start, List<LongLat> shops, LongLat deliverTo) {
+
+        int shopCount = shops.size();
+        if (shopCount <= 1) {
+            List<LongLat> tour = new ArrayList<>(shops);
+            tour.add(deliverTo);
+            return tour;
+        }
+        if (shopCount <= MAX_SHOPS_FLOWN_WHOLE) {
+            return shortestFlownTour(start, shops, deliverTo);
+        }
+
+        LongLat[] positions = new LongLat[shopCount + 2];
+        positions[0] = start;
+        for (int i = 0; i < shopCount; i++) {
+            positions[i + 1] = shops.get(i);
+        }
+        positions[shopCount + 1] = deliverTo;
+
+        int[][] moves = legMoves(positions);
+
+        int subsets = 1 << shopCount;
+        int[][] tourMoves = new int[subsets][shopCount];
+        int[][] previousShop = new int[subsets][shopCount];
+        for (int[] row : tourMoves) {
+            Arrays.fill(row, Integer.MAX_VALUE);
+        }
+        for (int shop = 0; shop < shopCount; shop++) {
+            tourMoves[1 << shop][shop] = moves[0][shop + 1];
+            previousShop[1 << shop][shop] = -1;
+        }
+
+        for (int visited = 1; visited < subsets; visited++) {
+            for (int last = 0; last < shopCount; last++) {
+                if (tourMoves[visited][last] == Integer.MAX_VALUE) {
+                    continue;
+                }
+                for (int next = 0; next < shopCount; next++) {
+                    if ((visited & (1 << next)) != 0) {
+                        continue;
+                    }
+                    int nextVisited = visited | (1 << next);
+                    int total = tourMoves[visited][last] + moves[last + 1][next + 1];
+                    if (total < tourMoves[nextVisited][next]) {
+                        tourMoves[nextVisited][next] = total;
+                        previousShop[nextVisited][next] = last;
+                    }
+                }
+            }
+        }
+
+        int allShops = subsets - 1;
+        int bestLast = 0;
+        int bestMoves = Integer.MAX_VALUE;
+        for (int last = 0; last < shopCount; last++) {
+            int total = tourMoves[allShops][last] + moves[last + 1][shopCount + 1];
+            if (total < bestMoves) {
+                bestMoves = total;
+                bestLast = last;
+            }
+        }
+
+        //Walking back from the last shop to get the shops in the order they are visited.
+        LongLat[] order = new LongLat[shopCount];
+        int visited = allShops;
+        for (int shop = bestLast, i = shopCount - 1; shop != -1; i--) {
+            order[i] = shops.get(shop);
+            int previous = previousShop[visited][shop];
+            visited &= ~(1 << shop);
+            shop = previous;
+        }
+
+        List<LongLat> tour = new ArrayList<>(Arrays.asList(order));
+        tour.add(deliverTo);
+        return tour;
+    }
+
+    /**
+     * Method that flies every order of the shops (followed by the pickup location) from the start with its own dry-run
+     * drone, and returns the one that took the fewest moves.
+     * The tours are spread over the common ForkJoin pool since they do not depend on each other.
+     * When two tours take the same number of moves, the later one is chosen, so with 2 shops a tie goes to the shops
+     * in reverse order, as it always has.
+     *
+     * @param start LongLat object of the position the order is started from.
+     * @param shops List of LongLat objects of the shops to visit, in any order.
+     * @param deliverTo LongLat object of the pickup location, which is always visited last.
+     * @return List of LongLat objects of the shops in the best order, followed by the pickup location.
+     */
+    private List<LongLat> shortestFlownTour(LongLat start, List<LongLat> shops, LongLat deliverTo) {
+
+        List<List<LongLat>> tours = new ArrayList<>();
+        addOrders(new ArrayList<>(), shops, tours);
+        for (List<LongLat> tour : tours) {
+            tour.add(deliverTo);
+        }
+
+        int[] tourMoves = new int[tours.size()];
+        IntStream.range(0, tours.size()).parallel().forEach(i -> {
+            Drone testDrone = Drone.dryRun(start);
+            testDrone.algorithm(landmarkPoints, tours.get(i), buildings);
+            tourMoves[i] = testDrone.getMoves();
+        });
+
+        int best = 0;
+        for (int i = 1; i < tours.size(); i++) {
+            if (tourMoves[i] <= tourMoves[best]) {
+                best = i;
+            }
+        }
+        return tours.get(best);
+    }
+
+    /**
+     * Method that adds every order of the shops not yet placed to the tours, after the shops already placed.
+     * @param placed List of the shops placed so far, in order.
+     * @param remaining List of the shops still to place.
+     * @param tours List that every complete order of the shops is added to.
+     */
+    private static void addOrders(List<LongLat> placed, List<LongLat> remaining, List<List<LongLat>> tours) {
+        if (remaining.isEmpty()) {
+            tours.add(new ArrayList<>(placed));
+            return;
+        }
+        for (int i = 0; i < remaining.size(); i++) {
+            List<LongLat> rest = new ArrayList<>(remaining);
+            placed.add(rest.remove(i));
+            addOrders(placed, rest, tours);
+            placed.remove(placed.size() - 1);
+        }
+    }
+
+    /**
+     * Method that fills in the table of the number of moves of every leg of a tour, in parallel.
+     * Legs that are never flown (into the start, out of the pickup location, or from a position to itself) are left as 0.
+     *
+     * @param positions Array of the start, the shops and the pickup location, in that order.
+     * @return Table where the entry [i][j] is the number of moves to fly from position i to position j and hover there.
+     */
+    private int[][] legMoves(LongLat[] positions) {
+
+        int last = positions.length - 1;
+        int[][] moves = new int[positions.length][positions.length];
+
+        List<int[]> legs = new ArrayList<>();
+        for (int from = 0; from < last; from++) {
+            for (int to = 1; to <= last; to++) {
+                //The start only goes to a shop, and a shop goes to another shop or the pickup location.
+                if (from != to && !(from == 0 && to == last)) {
+                    legs.add(new int[]{from, to});
+                }
+            }
+        }
+
+        IntStream.range(0, legs.size()).parallel().forEach(i -> {
+            int[] leg = legs.get(i);
+            Drone testDrone = Drone.dryRun(positions[leg[0]]);
+            testDrone.algorithm(landmarkPoints, List.of(positions[leg[1]]), buildings);
+            moves[leg[0]][leg[1]] = testDrone.getMoves();
+        });
+
+        return moves;
+    }
+
+}
@@ -0,0 +1,253 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class represents a visibility graph around the no-fly-zones.
+ * The nodes of the graph are the corners of every NFZ polygon (moved slightly outward so that the drone can fly to them
+ * without touching the NFZ), the landmarks and Appleton Tower.
+ * Two nodes are joined by an edge if the straight line between them does not cross any NFZ, with the length of the
+ * line as its weight.
+ * The graph is built once from the buildings and never changes afterwards.
+ * The shortest obstacle-free route between any two positions is then a chain of these nodes, which we find with
+ * Dijkstra's algorithm after connecting the two positions to every node they can see.
+ */
+public final class VisibilityGraph {
+
+    /**
+     * How far (in degrees) each NFZ corner is moved outward from its polygon.
+     * This is two drone moves, so that reaching a corner within the default distance never puts the drone inside the NFZ.
+     */
+    public static final double CORNER_OFFSET = 2 * LongLat.DEFAULT_DISTANCE;
+
+    /**
+     * The position of every node of the graph.
+     */
+    private final List<LongLat> nodes = new ArrayList<>();
+    /**
+     * For every node, the indexes of the nodes it can see and the length of the line to each of them.
+     */
+    private final int[][] neighbours;
+    private final double[][] neighbourDistances;
+
+    /**
+     * Spatial index over the NFZ edges used to check whether two positions can see each other.
+     */
+    private final NfzEdgeIndex nfzEdgeIndex;
+
+    /**
+     * Constructor for class VisibilityGraph.
+     * We first add a node for every NFZ corner, moved outward from its polygon, skipping corners that would still end
+     * up inside a NFZ (e.g. where two NFZ's touch).
+     * We then add a node for every landmark and for Appleton Tower.
+     * Finally, we check every pair of nodes for a direct route and join those that have one.
+     *
+     * @param nfzPolygons List of the NFZ's as polygon objects.
+     * @param landmarkPoints List of the landmarks as point objects.
+     * @param nfzEdgeIndex Spatial index over the edges of the NFZ polygons.
+     */
+    VisibilityGraph(List<Polygon> nfzPolygons, List<Point> landmarkPoints, NfzEdgeIndex nfzEdgeIndex) {
+
+        this.nfzEdgeIndex = nfzEdgeIndex;
+
+        List<Path2D> nfzShapes = new ArrayList<>();
+        for (Polygon polygon : nfzPolygons) {
+            for (List<Point> ring : polygon.coordinates()) {
+                Path2D shape = new Path2D.Double();
+                shape.moveTo(ring.get(0).longitude(), ring.get(0).latitude());
+                for (int i = 1; i < ring.size(); i++) {
+                    shape.lineTo(ring.get(i).longitude(), ring.get(i).latitude());
+                }
+                shape.closePath();
+                nfzShapes.add(shape);
+            }
+        }
+
+        for (Polygon polygon : nfzPolygons) {
+            for (List<Point> ring : polygon.coordinates()) {
+                //The last point of a ring is the same as the first, so it is not a separate corner.
+                int corners = ring.size() - 1;
+                for (int i = 0; i < corners; i++) {
+                    LongLat corner = offsetCorner(ring.get((i + corners - 1) % corners), ring.get(i),
+                            ring.get((i + 1) % corners), nfzShapes);
+                    if (corner != null) {
+                        nodes.add(corner);
+                    }
+                }
+            }
+        }
+
+        for (Point landmark : landmarkPoints) {
+            nodes.add(new LongLat(landmark.longitude(), landmark.latitude()));
+        }
+        nodes.add(Drone.appletonTower);
+
+        List<List<Integer>> visible = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            visible.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                if (canSee(nodes.get(i), nodes.get(j))) {
+                    visible.get(i).add(j);
+                    visible.get(j).add(i);
+                }
+            }
+        }
+
+        neighbours = new int[nodes.size()][];
+        neighbourDistances = new double[nodes.size()][];
+        for (int i = 0; i < nodes.size(); i++) {
+            neighbours[i] = visible.get(i).stream().mapToInt(Integer::intValue).toArray();
+            neighbourDistances[i] = new double[neighbours[i].length];
+            for (int k = 0; k < neighbours[i].length; k++) {
+                neighbourDistances[i][k] = nodes.get(i).distanceTo(nodes.get(neighbours[i][k]));
+            }
+        }
+    }
+
+    /**
+     * Method that moves a NFZ corner outward from its polygon, along the line halfway between its two edges.
+     * Whether this line points outward depends on whether the corner is convex or concave, so if moving one way ends up
+     * inside a NFZ we try the other way.
+     *
+     * @param previous The corner before this one in the polygon.
+     * @param corner The corner that we are moving.
+     * @param next The corner after this one in the polygon.
+     * @param nfzShapes Shapes of every NFZ, used to check that the moved corner is outside all of them.
+     * @return LongLat object of the moved corner, or null if both directions end up inside a NFZ.
+     */
+    private static LongLat offsetCorner(Point previous, Point corner, Point next, List<Path2D> nfzShapes) {
+
+        double toPreviousLng = previous.longitude() - corner.longitude();
+        double toPreviousLat = previous.latitude() - corner.latitude();
+        double toNextLng = next.longitude() - corner.longitude();
+        double toNextLat = next.latitude() - corner.latitude();
+        double previousLength = Math.hypot(toPreviousLng, toPreviousLat);
+        double nextLength = Math.hypot(toNextLng, toNextLat);
+        if (previousLength == 0 || nextLength == 0) {
+            return null;
+        }
+
+        //Direction pointing away from both edges, which is outward at a convex corner.
+        double directionLng = -(toPreviousLng / previousLength + toNextLng / nextLength);
+        double directionLat = -(toPreviousLat / previousLength + toNextLat / nextLength);
+        double directionLength = Math.hypot(directionLng, directionLat);
+        if (directionLength < 1e-9) {
+            //The two edges are in a straight line, so we move at right angles to them.
+            directionLng = -toNextLat / nextLength;
+            directionLat = toNextLng / nextLength;
+            directionLength = 1;
+        }
+
+        for (int sign : new int[]{1, -1}) {
+            double lng = corner.longitude() + sign * CORNER_OFFSET * directionLng / directionLength;
+            double lat = corner.latitude() + sign * CORNER_OFFSET * directionLat / directionLength;
+            boolean insideNfz = false;
+            for (Path2D shape : nfzShapes) {
+                if (shape.contains(lng, lat)) {
+                    insideNfz = true;
+                    break;
+                }
+            }
+            if (!insideNfz) {
+                return new LongLat(lng, lat);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that checks whether the straight line between two positions does not cross any NFZ.
+     * @param from One end of the line.
+     * @param to The other end of the line.
+     * @return Boolean value true if the line does not intersect any NFZ edge.
+     */
+    private boolean canSee(LongLat from, LongLat to) {
+        return !nfzEdgeIndex.intersectsAnyEdge(from.lng, from.lat, to.lng, to.lat);
+    }
+
+    /**
+     *
+     * Method that finds the shortest chain of waypoints to fly through to get from a start position to a destination
+     * without crossing a NFZ.
+     * We connect the start to every node it can see and the destination to every node that can see it, then run
+     * Dijkstra's algorithm from the start until the destination is reached.
+     * The start and the destination themselves are not included in the returned list.
+     * So if there is a direct route, the list is empty, and we also return an empty list if no route exists at all
+     * (in which case the caller falls back to the landmarks).
+     *
+     * @param start LongLat object of the position we are starting from.
+     * @param destination LongLat object of the position we would like to get to.
+     * @return List of LongLat objects which are the waypoints to visit in order, on the way to the destination.
+     */
+    public List<LongLat> shortestRoute(LongLat start, LongLat destination) {
+
+        if (canSee(start, destination)) {
+            return Collections.emptyList();
+        }
+
+        int nodeCount = nodes.size();
+        //The last index is used for the destination.
+        double[] distances = new double[nodeCount + 1];
+        int[] previous = new int[nodeCount + 1];
+        boolean[] visited = new boolean[nodeCount + 1];
+        boolean[] seesDestination = new boolean[nodeCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < nodeCount; i++) {
+            LongLat node = nodes.get(i);
+            seesDestination[i] = canSee(node, destination);
+            if (canSee(start, node)) {
+                distances[i] = start.distanceTo(node);
+                queue.add(new double[]{distances[i], i});
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int current = (int) queue.poll()[1];
+            if (visited[current]) {
+                continue;
+            }
+            visited[current] = true;
+            if (current == nodeCount) {
+                break;
+            }
+
+            if (seesDestination[current]) {
+                double distance = distances[current] + nodes.get(current).distanceTo(destination);
+                if (distance < distances[nodeCount]) {
+                    distances[nodeCount] = distance;
+                    previous[nodeCount] = current;
+                    queue.add(new double[]{distance, nodeCount});
+                }
+            }
+            for (int k = 0; k < neighbours[current].length; k++) {
+                int neighbour = neighbours[current][k];
+                double distance = distances[current] + neighbourDistances[current][k];
+                if (!visited[neighbour] && distance < distances[neighbour]) {
+                    distances[neighbour] = distance;
+                    previous[neighbour] = current;
+                    queue.add(new double[]{distance, neighbour});
+                }
+            }
+        }
+
+        List<LongLat> waypoints = new ArrayList<>();
+        for (int node = previous[nodeCount]; node != -1; node = previous[node]) {
+            waypoints.add(nodes.get(node));
+        }
+        Collections.reverse(waypoints);
+        return waypoints;
+    }
+}
@@ -2,14 +2,20 @@ package uk.ac.ed.inf;
 
 import com.google.gson.Gson;
 
+import java.io.File;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class represents the coordinates of W3W addresses.
  * Once a words object is called with the web port and the three words that make up a what three words address, we will have
  * the coordinates of its address.
+ * Addresses that have been resolved before (in this run or a previous one) are taken from the W3W cache, so the web
+ * server is only contacted for addresses we have never seen.
  */
 public final class Words {
 
@@ -17,10 +23,22 @@ public final class Words {
      * the web port where the web server is being run is needed to retrieve the information about the W3W address.
      */
     public final String webPort;
+    /**
+     * Cache of resolved W3W addresses shared by every words object, backed by a file in the directory the program is run from.
+     */
+    public static final WordsCache cache = new WordsCache(new File(WordsCache.DEFAULT_CACHE_FILE));
+
     /**
      * The LongLat object is created to associate the W3W address to coordinates.
+     * This belongs to each words object, so creating a new words object does not change the coordinates of another.
+     */
+    private final LongLat coordinates;
+
+    /**
+     * The W3W addresses that are being requested from the web server right now, mapped to the result of the request.
+     * If an address is asked for again before its request has finished, the same request is used rather than a new one.
      */
-    private static LongLat coordinates;
+    private static final Map<String, CompletableFuture<LongLat>> inFlight = new ConcurrentHashMap<>();
 
     /**
      * Constructor for Words class.
@@ -28,30 +46,57 @@ public final class Words {
      * of 3 words which combines to make a what 3 words address.
      *
      * From the web server, with our 3 word address the only thing that we are interested in getting is the coordinates of it.
+     * If the address is already in the W3W cache, we take the coordinates from there instead and make no request.
+     * If it is already being requested, we wait for that request instead.
      * @param webPort the port the web server is running on.
      * @param threeWords String array of the words that make up the W3W address, that we would like to convert to coordinates.
      */
     Words(String webPort, String[] threeWords) {
         this.webPort = webPort;
+        coordinates = resolveAsync(webPort, threeWords).join();
+    }
+
+    /**
+     * Method that starts resolving a W3W address to coordinates without waiting for it.
+     * The address is taken from the W3W cache if it is there. Otherwise, unless the address is already being requested,
+     * we send an asynchronous request to the web server, whose result is put in the W3W cache when it arrives.
+     *
+     * @param webPort the port the web server is running on.
+     * @param threeWords String array of the words that make up the W3W address, that we would like to convert to coordinates.
+     * @return CompletableFuture of the coordinates of the W3W address.
+     */
+    static CompletableFuture<LongLat> resolveAsync(String webPort, String[] threeWords) {
+
+        LongLat cached = cache.get(webPort, threeWords);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        String key = WordsCache.key(webPort, threeWords);
+        CompletableFuture<LongLat> request = inFlight.computeIfAbsent(key, k -> request(webPort, threeWords));
+        request.whenComplete((result, e) -> inFlight.remove(key, request));
+        return request;
+    }
+
+    /**
+     * Method that sends the asynchronous request for a W3W address to the web server.
+     *
+     * @param webPort the port the web server is running on.
+     * @param threeWords String array of the words that make up the W3W address.
+     * @return CompletableFuture of the coordinates of the W3W address, or of null if the request failed.
+     */
+    private static CompletableFuture<LongLat> request(String webPort, String[] threeWords) {
 
         String wordOne = threeWords[0];
         String wordTwo = threeWords[1];
         String wordThree = threeWords[2];
 
+        HttpRequest request = null;
         try {
 
-            HttpRequest request = HttpRequest.newBuilder() //HTTP GET request.
+            request = HttpRequest.newBuilder() //HTTP GET request.
                     .uri(URI.create("http://localhost:" + webPort + "/words/" + wordOne + "/" + wordTwo + "/" + wordThree + "/details.json"))
                     .build();
-            HttpResponse<String> response = Menus.client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if(response.statusCode() == Menus.SUCCESSFUL_RESPONSE_CODE){
-                coordinates = new Gson().fromJson(response.body(), W3wDetails.class).coordinates;
-            }
-            else {
-                System.err.println("Status code is not 200.");
-                System.exit(1);
-            }
 
         } catch (IllegalArgumentException e){
 
@@ -59,17 +104,30 @@ public final class Words {
             e.printStackTrace();
             System.exit(1);
 
-        } catch (java.net.ConnectException e){
-
-            System.err.println("Fatal error: unable to connect to localhost at port " + webPort + ".");
-            e.printStackTrace();
-            System.exit(1);
-
-        } catch (Exception e){
-
-            System.err.println("An exception has occurred");
-            e.printStackTrace();
         }
+
+        long requestStart = Metrics.startTimer();
+        return Menus.client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, e) -> Metrics.HTTP_WORDS.recordSince(requestStart))
+                .thenApply(response -> {
+                    if(response.statusCode() != Menus.SUCCESSFUL_RESPONSE_CODE){
+                        System.err.println("Status code is not 200.");
+                        System.exit(1);
+                    }
+                    LongLat coordinates = new Gson().fromJson(response.body(), W3wDetails.class).coordinates;
+                    cache.put(webPort, threeWords, coordinates);
+                    return coordinates;
+                })
+                .exceptionally(e -> {
+                    if (e.getCause() instanceof java.net.ConnectException){
+                        System.err.println("Fatal error: unable to connect to localhost at port " + webPort + ".");
+                        e.printStackTrace();
+                        System.exit(1);
+                    }
+                    System.err.println("An exception has occurred");
+                    e.printStackTrace();
+                    return null;
+                });
     }
 
     /**
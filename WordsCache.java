@@ -0,0 +1,140 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents a cache of What3Words addresses that have already been resolved to coordinates.
+ * It is an in-memory map keyed by the port of the web server that resolved the address and the three-word string
+ * (e.g. "9898/army.monks.grapes"), backed by a small binary file on disk so that resolved addresses survive across runs.
+ * The port is part of the key since different web servers (such as the stand-in of the load generator) can give the
+ * same address different coordinates.
+ * Since shops and delivery addresses rarely change, after the first run almost every address is resolved without
+ * making a request to the web server.
+ */
+public final class WordsCache {
+
+    /**
+     * Name of the file the cache is stored in by default, in the directory the program is run from.
+     */
+    public static final String DEFAULT_CACHE_FILE = "w3w-cache.bin";
+
+    /**
+     * Hash map that maps the key of a W3W address (see key) to its coordinates.
+     * A concurrent map is used so that the cache can be read while other addresses are being resolved.
+     */
+    private final Map<String, LongLat> wordsToCoordinates = new ConcurrentHashMap<>();
+
+    /**
+     * The file that the cache is backed by.
+     * Every record in the file is the key of the address followed by the longitude and latitude as doubles.
+     */
+    private final File cacheFile;
+
+    /**
+     * Constructor for class WordsCache.
+     * We read every record already stored in the cache file (if it exists) into the in-memory map.
+     * If the file ends part way through a record (e.g. the program was killed while writing), we keep every complete
+     * record read so far and cut the file back to the end of the last one, so that records appended later are read
+     * from the right place.
+     *
+     * @param cacheFile The file that the cache is loaded from and appended to.
+     */
+    WordsCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+
+        if (!cacheFile.exists()) {
+            return;
+        }
+
+        try {
+            byte[] contents = Files.readAllBytes(cacheFile.toPath());
+            int completeLength = 0;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+                while (true) {
+                    String words = in.readUTF();
+                    double lng = in.readDouble();
+                    double lat = in.readDouble();
+                    wordsToCoordinates.put(words, new LongLat(lng, lat));
+                    completeLength = contents.length - in.available();
+                }
+            } catch (EOFException e) {
+                //Reached the end of the cache file, every complete record has been read.
+            }
+
+            if (completeLength < contents.length) {
+                try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+                    file.setLength(completeLength);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read W3W cache file " + cacheFile.getName() + ", continuing without it.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that makes the key used by the cache for a W3W address resolved by a web server.
+     *
+     * @param webPort The port of the web server that resolves the address.
+     * @param threeWords String array of the words that make up the W3W address.
+     * @return The port, then a slash, then the W3W address as a single string with the words separated by dots.
+     */
+    public static String key(String webPort, String[] threeWords) {
+        return webPort + "/" + String.join(".", threeWords);
+    }
+
+    /**
+     * Getter for the coordinates of a W3W address that has already been resolved.
+     *
+     * @param webPort The port of the web server that resolves the address.
+     * @param threeWords String array of the words that make up the W3W address.
+     * @return LongLat object which is the coordinates of the W3W address, or null if it has not been resolved yet.
+     */
+    public LongLat get(String webPort, String[] threeWords) {
+        return wordsToCoordinates.get(key(webPort, threeWords));
+    }
+
+    /**
+     * Method that stores the coordinates of a newly resolved W3W address.
+     * The record is added to the in-memory map and appended to the cache file so that it is available on the next run.
+     * Appending is synchronized so that records from different threads are never interleaved in the file.
+     *
+     * @param webPort The port of the web server that resolved the address.
+     * @param threeWords String array of the words that make up the W3W address.
+     * @param coordinates LongLat object which is the coordinates of the W3W address.
+     */
+    public synchronized void put(String webPort, String[] threeWords, LongLat coordinates) {
+        String words = key(webPort, threeWords);
+        if (coordinates == null || wordsToCoordinates.putIfAbsent(words, coordinates) != null) {
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile, true)))) {
+            out.writeUTF(words);
+            out.writeDouble(coordinates.lng);
+            out.writeDouble(coordinates.lat);
+        } catch (IOException e) {
+            System.err.println("Unable to write to W3W cache file " + cacheFile.getName() + ".");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Getter for the number of W3W addresses in the cache.
+     * @return Number of resolved W3W addresses held in memory.
+     */
+    public int size() {
+        return wordsToCoordinates.size();
+    }
+}
@@ -0,0 +1,438 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.Gson;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *
+ * This class generates synthetic days of orders, at whatever volume we like, and serves them to the drone the same way
+ * the real inputs are served, so the whole of App can be load tested without the course web server or derbyDB.
+ *
+ * The web server is stood in for by an embedded http server that answers the same requests as the real one:
+ * /menus/menus.json, /buildings/no-fly-zones.geojson, /buildings/landmarks.geojson and /words/.../details.json.
+ * The database is stood in for by a Derby network server embedded in this program, with the orders and orderDetails
+ * tables that Orders reads, in a new database in a temporary directory.
+ * The NFZ's and landmarks are a synthetic map (see SyntheticMap), and the shops, menus, delivery locations and orders
+ * are all random, from the same seed as the map, so the same settings always give the same days.
+ *
+ * The program arguments are the same as App's, and once everything is being served App is run with them, against the
+ * stand-ins, and they are then stopped. With the ilp.loadServeOnly system property set to true, they are left running
+ * instead, so App (or anything else) can be run against them separately.
+ * The size of the days is set with system properties:
+ * ilp.loadOrders (orders per day), ilp.loadShops, ilp.loadMenuSize (items per shop), ilp.loadNfzs, ilp.loadLandmarks,
+ * ilp.loadDeliverTos (different delivery locations) and ilp.loadSeed.
+ * By default these match the volume of a real day, so e.g. -Dilp.loadOrders=250 is about 10 times today's volume.
+ *
+ * Like the benchmarks, this is in the same package as the rest of the code so it can use its package-private classes,
+ * and is built with the benchmarks' source set, which also needs Derby (derby and derbynet) on the classpath.
+ *
+ */
+public final class LoadGenerator {
+
+    /**
+     * The number of orders placed on each day.
+     */
+    public static final int ORDERS_PER_DAY = Integer.getInteger("ilp.loadOrders", 25);
+    /**
+     * The number of shops, each with its own menu.
+     */
+    public static final int SHOP_COUNT = Integer.getInteger("ilp.loadShops", 15);
+    /**
+     * The number of items on the menu of every shop.
+     */
+    public static final int MENU_SIZE = Integer.getInteger("ilp.loadMenuSize", 8);
+    /**
+     * The number of NFZ's on the synthetic map.
+     */
+    public static final int NFZ_COUNT = Integer.getInteger("ilp.loadNfzs", 4);
+    /**
+     * The number of landmarks on the synthetic map.
+     */
+    public static final int LANDMARK_COUNT = Integer.getInteger("ilp.loadLandmarks", 2);
+    /**
+     * The number of different delivery locations that orders are delivered to.
+     */
+    public static final int DELIVER_TO_COUNT = Integer.getInteger("ilp.loadDeliverTos", 100);
+    /**
+     * Seed of the random numbers, so that the same settings always give the same days.
+     */
+    public static final long SEED = Long.getLong("ilp.loadSeed", 42);
+    /**
+     * Whether the stand-ins are left running rather than running App against them.
+     */
+    public static final boolean SERVE_ONLY = Boolean.getBoolean("ilp.loadServeOnly");
+
+    /**
+     * The most shops an order's items are from, and the most items in an order, the same as real orders.
+     */
+    public static final int MAX_SHOPS_PER_ORDER = 2;
+    public static final int MAX_ITEMS_PER_ORDER = 4;
+    /**
+     * The cheapest and dearest price (in pence) of an item.
+     */
+    public static final int MIN_ITEM_PENCE = 100;
+    public static final int MAX_ITEM_PENCE = 2500;
+
+    /**
+     * The number of order rows sent to the database in one batch.
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private final Random random = new Random(SEED);
+    private final SyntheticMap map = new SyntheticMap(NFZ_COUNT, LANDMARK_COUNT, SEED);
+
+    /**
+     * Every shop with its name, W3W address and menu, as served by /menus/menus.json.
+     */
+    private final List<ShopDetails> shops = new ArrayList<>();
+    /**
+     * The W3W address of every delivery location.
+     */
+    private final List<String> deliverTos = new ArrayList<>();
+    /**
+     * Hash map that maps the path of every request the stand-in web server answers to the body of its response.
+     */
+    private final Map<String, byte[]> responses = new HashMap<>();
+
+    /**
+     * Constructor for class LoadGenerator.
+     * We pick a random position outside the NFZ's for every shop and every delivery location and give each one a W3W
+     * address, and then fill every shop's menu with items at random prices. The responses of the stand-in web server
+     * are all made here, so serving them is only a look up.
+     *
+     * The first word of every W3W address is made from the settings the positions depend on. The W3W cache keeps
+     * addresses across runs, so this stops an address from a run with other settings being taken from the cache with
+     * the wrong position.
+     */
+    LoadGenerator() {
+
+        String firstWord = "g" + Integer.toString(Math.floorMod(
+                Objects.hash(SEED, NFZ_COUNT, LANDMARK_COUNT, SHOP_COUNT, DELIVER_TO_COUNT), 36 * 36 * 36 * 36 * 36), 36);
+
+        for (int i = 0; i < SHOP_COUNT; i++) {
+            ShopDetails shop = new ShopDetails();
+            shop.name = "Shop " + i;
+            shop.location = addWords(firstWord + ".shop." + i, map.randomFreePosition(random));
+            shop.menu = new ArrayList<>();
+            shops.add(shop);
+        }
+        for (int i = 0; i < DELIVER_TO_COUNT; i++) {
+            deliverTos.add(addWords(firstWord + ".drop." + i, map.randomFreePosition(random)));
+        }
+
+        for (ShopDetails shop : shops) {
+            for (int i = 0; i < MENU_SIZE; i++) {
+                ItemDetails item = new ItemDetails();
+                item.item = shop.name + " item " + i;
+                item.pence = MIN_ITEM_PENCE + random.nextInt(MAX_ITEM_PENCE - MIN_ITEM_PENCE + 1);
+                shop.menu.add(item);
+            }
+        }
+
+        List<Feature> nfzFeatures = new ArrayList<>();
+        for (Polygon nfz : map.nfzPolygons) {
+            nfzFeatures.add(Feature.fromGeometry(nfz));
+        }
+        List<Feature> landmarkFeatures = new ArrayList<>();
+        for (Point landmark : map.landmarks) {
+            landmarkFeatures.add(Feature.fromGeometry(landmark));
+        }
+
+        addResponse("/menus/menus.json", new Gson().toJson(shops));
+        addResponse("/buildings/no-fly-zones.geojson", FeatureCollection.fromFeatures(nfzFeatures).toJson());
+        addResponse("/buildings/landmarks.geojson", FeatureCollection.fromFeatures(landmarkFeatures).toJson());
+    }
+
+    /**
+     * Method that adds the /words response of a W3W address, which has the same fields as the real details.json that
+     * the drone reads.
+     *
+     * @param words The W3W address, as three words separated by dots.
+     * @param position The position of the address.
+     * @return The W3W address.
+     */
+    private String addWords(String words, LongLat position) {
+        addResponse("/words/" + words.replace('.', '/') + "/details.json",
+                "{\"words\":\"" + words + "\",\"coordinates\":{\"lng\":" + position.lng + ",\"lat\":" + position.lat + "}}");
+        return words;
+    }
+
+    private void addResponse(String path, String body) {
+        responses.put(path, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method that starts the stand-in web server, which answers every request with the response made for its path,
+     * or 404 if there is none, in the same way as the real web server.
+     *
+     * @param webPort The port the web server is run on.
+     * @return The web server, which is already running.
+     */
+    private HttpServer serveWebServer(String webPort) {
+
+        HttpServer server = null;
+        try {
+
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(webPort)), 0);
+
+        } catch (IOException e) {
+
+            System.err.println("Fatal error: unable to start the web server at port " + webPort + ".");
+            e.printStackTrace();
+            System.exit(1);
+
+        }
+
+        server.createContext("/", this::respond);
+        //W3W addresses are requested asynchronously, so many requests can arrive at the same time.
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        byte[] body = responses.get(exchange.getRequestURI().getPath());
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(Menus.SUCCESSFUL_RESPONSE_CODE, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    /**
+     * Method that starts the stand-in database, a Derby network server embedded in this program, and creates derbyDB
+     * in a new temporary directory with the orders of every day.
+     *
+     * @param dbPort The port the database is run on.
+     * @param days Every day that orders are placed on.
+     * @return The network server, which is already running.
+     */
+    private NetworkServerControl serveDatabase(String dbPort, List<LocalDate> days) {
+
+        NetworkServerControl server = null;
+        try {
+
+            //Derby keeps its databases in its system home, which must be set before Derby starts.
+            Path home = Files.createTempDirectory("ilp-load-");
+            System.setProperty("derby.system.home", home.toString());
+
+            server = new NetworkServerControl(InetAddress.getLoopbackAddress(), Integer.parseInt(dbPort));
+            server.start(new PrintWriter(System.err));
+            waitUntilStarted(server);
+
+            try (Connection conn = DriverManager.getConnection("jdbc:derby:derbyDB;create=true")) {
+                createOrderTables(conn);
+                for (LocalDate day : days) {
+                    insertOrders(conn, Date.valueOf(day));
+                }
+            }
+
+        } catch (Exception e) {
+
+            System.err.println("Fatal error: unable to start the database at port " + dbPort + ".");
+            e.printStackTrace();
+            System.exit(1);
+
+        }
+
+        return server;
+    }
+
+    /**
+     * Method that waits for a Derby network server to answer, since it is started on a thread of its own.
+     * @param server The network server that has been started.
+     * @throws Exception If the server has not answered after 10 seconds.
+     */
+    private static void waitUntilStarted(NetworkServerControl server) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            Thread.sleep(100);
+            try {
+                server.ping();
+                return;
+            } catch (Exception e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that creates the orders and orderDetails tables, with the same columns as those of the real derbyDB.
+     * @param conn Connection to the database.
+     * @throws SQLException If the tables could not be created.
+     */
+    private static void createOrderTables(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("create table orders(" +
+                    "orderNo char(8), " +
+                    "deliveryDate date, " +
+                    "customer char(8), " +
+                    "deliverTo varchar(18))");
+            statement.execute("create table orderDetails(" +
+                    "orderNo char(8), " +
+                    "item varchar(58))");
+        }
+    }
+
+    /**
+     * Method that places random orders on a day, and writes them to the orders and orderDetails tables.
+     * Every order's items are from 1 or 2 shops (at least one from each), and it is delivered to a random delivery
+     * location. The rows of a day are sent in batches and committed together.
+     *
+     * @param conn Connection to the database.
+     * @param date The date the orders are placed on.
+     * @throws SQLException If the orders could not be written.
+     */
+    private void insertOrders(Connection conn, Date date) throws SQLException {
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement psOrders = conn.prepareStatement("insert into orders values (?, ?, ?, ?)");
+             PreparedStatement psOrderDetails = conn.prepareStatement("insert into orderDetails values (?, ?)")) {
+
+            Set<String> orderNos = new HashSet<>();
+            for (int order = 0; order < ORDERS_PER_DAY; order++) {
+
+                String orderNo;
+                do {
+                    orderNo = String.format("%08x", random.nextInt());
+                } while (!orderNos.add(orderNo));
+
+                psOrders.setString(1, orderNo);
+                psOrders.setDate(2, date);
+                psOrders.setString(3, String.format("s%07d", random.nextInt(10_000_000)));
+                psOrders.setString(4, deliverTos.get(random.nextInt(deliverTos.size())));
+                psOrders.addBatch();
+
+                for (String item : randomItems()) {
+                    psOrderDetails.setString(1, orderNo);
+                    psOrderDetails.setString(2, item);
+                    psOrderDetails.addBatch();
+                }
+
+                if ((order + 1) % INSERT_BATCH_SIZE == 0) {
+                    psOrders.executeBatch();
+                    psOrderDetails.executeBatch();
+                }
+            }
+            psOrders.executeBatch();
+            psOrderDetails.executeBatch();
+        }
+        conn.commit();
+    }
+
+    /**
+     * Method that picks the items of a random order.
+     * @return List of the names of the items, which are from 1 or 2 shops, with at least one from each.
+     */
+    private List<String> randomItems() {
+
+        List<ShopDetails> orderShops = new ArrayList<>(shops);
+        Collections.shuffle(orderShops, random);
+        orderShops = orderShops.subList(0, Math.min(orderShops.size(), 1 + random.nextInt(MAX_SHOPS_PER_ORDER)));
+
+        int itemCount = orderShops.size() + random.nextInt(MAX_ITEMS_PER_ORDER - orderShops.size() + 1);
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            List<ItemDetails> menu = orderShops.get(i % orderShops.size()).menu;
+            items.add(menu.get(random.nextInt(menu.size())).item);
+        }
+        return items;
+    }
+
+    /**
+     * This method generates the days asked for, serves them from the stand-in web server and database, and runs App
+     * against them (unless ilp.loadServeOnly is set).
+     *
+     * @param args The program arguments, the same as App's: [date, month, year, webPort, dbPort], or
+     *             [date, month, year, endDate, endMonth, endYear, webPort, dbPort] for a batch of days.
+     *             Orders are placed on every day from the first day to the last (both included).
+     */
+    public static void main(String[] args) {
+
+        LocalDate startDate = LocalDate.of(Integer.parseInt(args[2]), Integer.parseInt(args[1]), Integer.parseInt(args[0]));
+        LocalDate endDate = startDate;
+        int portArgs = 3;
+        if (args.length == App.BATCH_ARGUMENTS) {
+            endDate = LocalDate.of(Integer.parseInt(args[5]), Integer.parseInt(args[4]), Integer.parseInt(args[3]));
+            portArgs = 6;
+        }
+        String webPort = args[portArgs];
+        String dbPort = args[portArgs + 1];
+
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = startDate; !day.isAfter(endDate); day = day.plusDays(1)) {
+            days.add(day);
+        }
+
+        LoadGenerator generator = new LoadGenerator();
+        HttpServer webServer = generator.serveWebServer(webPort);
+        NetworkServerControl database = generator.serveDatabase(dbPort, days);
+
+        System.out.println("Serving " + days.size() + " day(s) of " + ORDERS_PER_DAY + " orders from " + SHOP_COUNT
+                + " shops of " + MENU_SIZE + " items, on a map of " + NFZ_COUNT + " NFZ's, at web port " + webPort
+                + " and database port " + dbPort + ".");
+
+        if (SERVE_ONLY) {
+            //The stand-ins run until the program is stopped.
+            try {
+                Thread.currentThread().join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        App.main(args);
+        System.out.println("App ran on " + days.size() * ORDERS_PER_DAY + " orders in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+
+        webServer.stop(0);
+        ((ExecutorService) webServer.getExecutor()).shutdown();
+        try {
+            database.shutdown();
+        } catch (Exception e) {
+            System.err.println("The database did not shut down.");
+            e.printStackTrace();
+        }
+    }
+}
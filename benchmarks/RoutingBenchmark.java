@@ -0,0 +1,216 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * This class holds the JMH benchmarks for the routing hot paths of the drone.
+ * Every benchmark is run against the real Edinburgh NFZ's (from the web server) and against synthetic maps with
+ * 10 and 100 times as many NFZ's, all in the confinement area (see SyntheticMap), so we can see how the routing scales
+ * with the number of NFZ's.
+ *
+ * The benchmarks are in the same package as the rest of the code so they can use its package-private constructors.
+ * They need their own source set with JMH on the classpath (and its annotation processor), and are run with the
+ * main method below, which reports ops/s together with the allocation rate from the gc profiler.
+ * The Edinburgh map needs the web server to be running, on the port given by the ilp.webPort system property.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    /**
+     * The number of NFZ's on the real Edinburgh map, which the synthetic maps are multiples of.
+     */
+    public static final int EDINBURGH_NFZ_COUNT = 4;
+    /**
+     * The number of landmarks on the real Edinburgh map, which the synthetic maps also have.
+     */
+    public static final int EDINBURGH_LANDMARK_COUNT = 2;
+    /**
+     * The number of random positions each benchmark cycles through. This is a power of 2 so we can wrap with a mask.
+     */
+    public static final int POSITIONS = 1024;
+    /**
+     * Seed of the random numbers, so that every run benchmarks the same maps and positions.
+     */
+    public static final long SEED = 42;
+
+    /**
+     * The map the benchmarks are run against: the real Edinburgh map, or a synthetic map with a multiple of its NFZ's.
+     */
+    @Param({"edinburgh", "synthetic-10x", "synthetic-100x"})
+    public String map;
+
+    private Buildings buildings;
+    private List<Point> landmarkPoints;
+    private Menus menus;
+    private final String[] shopsToVisit = {"Shop A", "Shop B"};
+
+    private final LongLat[] starts = new LongLat[POSITIONS];
+    private final LongLat[] destinations = new LongLat[POSITIONS];
+    private final LongLat[] moveEnds = new LongLat[POSITIONS];
+    private final int[] angles = new int[POSITIONS];
+    private final List<List<LongLat>> orderRoutes = new ArrayList<>();
+    private int next;
+
+    /**
+     * Method that builds the map, the two shops and the random positions used by the benchmarks.
+     * Every position is outside the NFZ's and can be reached from Appleton Tower.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        if (map.equals("edinburgh")) {
+            buildings = new Buildings(System.getProperty("ilp.webPort", "9898"));
+        } else {
+            int multiplier = Integer.parseInt(map.substring(map.indexOf('-') + 1, map.length() - 1));
+            SyntheticMap syntheticMap = new SyntheticMap(EDINBURGH_NFZ_COUNT * multiplier, EDINBURGH_LANDMARK_COUNT, SEED);
+            buildings = new Buildings(syntheticMap.nfzPolygons, syntheticMap.landmarks);
+        }
+        landmarkPoints = PlanningContext.withAppletonTower(buildings.landmarkPoints);
+
+        Random random = new Random(SEED);
+
+        Map<String, LongLat> shopsToLongLat = new HashMap<>();
+        List<ShopDetails> shopDetailsList = new ArrayList<>();
+        for (String name : shopsToVisit) {
+            ShopDetails shop = new ShopDetails();
+            shop.name = name;
+            shop.location = "synthetic.shop." + name.charAt(name.length() - 1);
+            shop.menu = new ArrayList<>();
+            shopDetailsList.add(shop);
+            shopsToLongLat.put(name, reachablePosition(random));
+        }
+        menus = new Menus(shopDetailsList, shopsToLongLat);
+
+        for (int i = 0; i < POSITIONS; i++) {
+            starts[i] = reachablePosition(random);
+            destinations[i] = reachablePosition(random);
+            angles[i] = random.nextInt(36) * 10;
+            moveEnds[i] = starts[i].nextPosition(angles[i]);
+            orderRoutes.add(List.of(shopsToLongLat.get(shopsToVisit[i % 2]), destinations[i]));
+        }
+    }
+
+    /**
+     * Method that picks a random position in the confinement area that the drone can reach from Appleton Tower,
+     * either directly or around the NFZ's with the visibility graph. A position inside a NFZ is never reachable.
+     * @param random Random numbers used to pick the position.
+     * @return LongLat object of the position.
+     */
+    private LongLat reachablePosition(Random random) {
+        while (true) {
+            LongLat position = new LongLat(
+                    SyntheticMap.MIN_LNG + random.nextDouble() * (SyntheticMap.MAX_LNG - SyntheticMap.MIN_LNG),
+                    SyntheticMap.MIN_LAT + random.nextDouble() * (SyntheticMap.MAX_LAT - SyntheticMap.MIN_LAT));
+            if (buildings.checkDirectRoute(Drone.appletonTower, position)
+                    || !buildings.getVisibilityGraph().shortestRoute(Drone.appletonTower, position).isEmpty()) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Method that gives the index of the next position to benchmark with.
+     * @return Index into the arrays of positions.
+     */
+    private int nextIndex() {
+        next = (next + 1) & (POSITIONS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean checkDirectRoute() {
+        int i = nextIndex();
+        return buildings.checkDirectRoute(starts[i], moveEnds[i]);
+    }
+
+    @Benchmark
+    public LongLat nextPosition() {
+        int i = nextIndex();
+        return starts[i].nextPosition(angles[i]);
+    }
+
+    @Benchmark
+    public int bestAngle() {
+        int i = nextIndex();
+        return starts[i].bestAngle(destinations[i]);
+    }
+
+    @Benchmark
+    public int angleToDodgePotentialNfz() {
+        int i = nextIndex();
+        return starts[i].angleToDodgePotentialNfz(buildings, angles[i], destinations[i]);
+    }
+
+    /**
+     * Flies a whole order (a shop and then the delivery location) with a new drone.
+     * @return The number of moves the drone made.
+     */
+    @Benchmark
+    public int algorithm() {
+        int i = nextIndex();
+        Drone drone = new Drone();
+        drone.setPosition(starts[i]);
+        drone.algorithm(landmarkPoints, orderRoutes.get(i), buildings);
+        return drone.getMoves();
+    }
+
+    /**
+     * Plans an order and checks whether a drone can do it and get back to Appleton Tower.
+     * The cache of leg costs is cleared first, so we measure the dry runs rather than the cache.
+     * @return Boolean value true if the drone has enough moves for the order.
+     */
+    @Benchmark
+    public boolean sufficientNumberOfMovesForOrder() {
+        int i = nextIndex();
+        buildings.getLegCostCache().clear();
+        Drone drone = new Drone();
+        drone.setPosition(starts[i]);
+        FlightPlan plan = drone.planOrder(orderRoutes.get(i), landmarkPoints, buildings);
+        return plan != null && drone.sufficientNumberOfMovesForOrder(plan, landmarkPoints, buildings);
+    }
+
+    /**
+     * Orders the two shops of an order. The cache of leg costs is cleared first, as above.
+     * @return List of LongLat objects of the shops and delivery location in the order they are visited.
+     */
+    @Benchmark
+    public List<LongLat> getTspShopsToVisitLongLatList() {
+        int i = nextIndex();
+        buildings.getLegCostCache().clear();
+        return menus.getTspShopsToVisitLongLatList(starts[i], shopsToVisit, destinations[i], landmarkPoints, buildings);
+    }
+
+    /**
+     * Runs every benchmark above with the gc profiler, so the allocation rate is reported next to ops/s.
+     * @param args Not used.
+     * @throws RunnerException If JMH fails to run the benchmarks.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RoutingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,99 @@
+package uk.ac.ed.inf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *
+ * This class checks a line segment against a run of segments several at a time, using the JDK Vector API.
+ * Each lane of a vector holds one segment, and the bounding box test and the four orientation tests of
+ * Line2D.linesIntersect are done for every lane at once.
+ *
+ * The orientation of a point relative to a segment is worked out with exactly the same arithmetic as
+ * Line2D.relativeCCW, so every lane gets the same sign it would get there. Two segments intersect when each one has
+ * the ends of the other on opposite sides of it. When an end lies exactly on the line through the other segment
+ * (the orientation is 0), Line2D.relativeCCW has extra rules for collinear points, so the few groups of segments where
+ * that happens are handed to the scalar kernel, as are the segments left over at the end of a run and line segments of
+ * zero length (which the bounding box test does not work for, see ScalarIntersectionKernel).
+ * This class is only loaded when the jdk.incubator.vector module is there (see IntersectionKernel).
+ *
+ * It is kept in a source set of its own, which is only compiled (together with the rest of the code) with
+ * --add-modules jdk.incubator.vector, so that the default build needs no flags and prints no incubator warning.
+ * Without it, the class is simply not there and the scalar kernel is used.
+ *
+ */
+final class VectorIntersectionKernel implements IntersectionKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarIntersectionKernel scalar = new ScalarIntersectionKernel();
+
+    @Override
+    public boolean anyIntersects(EdgeArrays edges, int from, int to, double ax, double ay, double bx, double by) {
+
+        if (ax == bx && ay == by) {
+            return scalar.anyIntersects(edges, from, to, ax, ay, bx, by);
+        }
+
+        double lineMinX = Math.min(ax, bx);
+        double lineMaxX = Math.max(ax, bx);
+        double lineMinY = Math.min(ay, by);
+        double lineMaxY = Math.max(ay, by);
+        double lineDx = bx - ax;
+        double lineDy = by - ay;
+
+        int lanes = SPECIES.length();
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+
+            //Bounding box test, which rules out most segments before any orientation is worked out.
+            VectorMask<Double> overlap = DoubleVector.fromArray(SPECIES, edges.maxX, i).compare(VectorOperators.GE, lineMinX)
+                    .and(DoubleVector.fromArray(SPECIES, edges.minX, i).compare(VectorOperators.LE, lineMaxX))
+                    .and(DoubleVector.fromArray(SPECIES, edges.maxY, i).compare(VectorOperators.GE, lineMinY))
+                    .and(DoubleVector.fromArray(SPECIES, edges.minY, i).compare(VectorOperators.LE, lineMaxY));
+            if (!overlap.anyTrue()) {
+                continue;
+            }
+
+            DoubleVector x1 = DoubleVector.fromArray(SPECIES, edges.x1, i);
+            DoubleVector y1 = DoubleVector.fromArray(SPECIES, edges.y1, i);
+            DoubleVector x2 = DoubleVector.fromArray(SPECIES, edges.x2, i);
+            DoubleVector y2 = DoubleVector.fromArray(SPECIES, edges.y2, i);
+            DoubleVector edgeDx = x2.sub(x1);
+            DoubleVector edgeDy = y2.sub(y1);
+
+            //Orientation of the ends of the line segment relative to each edge, as in relativeCCW(edge, end).
+            DoubleVector startToEdge = DoubleVector.broadcast(SPECIES, ax).sub(x1).mul(edgeDy)
+                    .sub(DoubleVector.broadcast(SPECIES, ay).sub(y1).mul(edgeDx));
+            DoubleVector endToEdge = DoubleVector.broadcast(SPECIES, bx).sub(x1).mul(edgeDy)
+                    .sub(DoubleVector.broadcast(SPECIES, by).sub(y1).mul(edgeDx));
+            //Orientation of the ends of each edge relative to the line segment, as in relativeCCW(line, edge end).
+            DoubleVector edgeStartToLine = x1.sub(ax).mul(lineDy).sub(y1.sub(ay).mul(lineDx));
+            DoubleVector edgeEndToLine = x2.sub(ax).mul(lineDy).sub(y2.sub(ay).mul(lineDx));
+
+            VectorMask<Double> collinear = startToEdge.compare(VectorOperators.EQ, 0)
+                    .or(endToEdge.compare(VectorOperators.EQ, 0))
+                    .or(edgeStartToLine.compare(VectorOperators.EQ, 0))
+                    .or(edgeEndToLine.compare(VectorOperators.EQ, 0))
+                    .and(overlap);
+            if (collinear.anyTrue()) {
+                if (scalar.anyIntersects(edges, i, i + lanes, ax, ay, bx, by)) {
+                    return true;
+                }
+                continue;
+            }
+
+            //None of the orientations is 0 here, and two orientations have opposite signs exactly when their product is
+            //negative (they are never small enough for the product to round to 0).
+            VectorMask<Double> endsOnOppositeSidesOfEdge = startToEdge.mul(endToEdge).compare(VectorOperators.LT, 0);
+            VectorMask<Double> edgeEndsOnOppositeSidesOfLine = edgeStartToLine.mul(edgeEndToLine).compare(VectorOperators.LT, 0);
+            if (overlap.and(endsOnOppositeSidesOfEdge).and(edgeEndsOnOppositeSidesOfLine).anyTrue()) {
+                return true;
+            }
+        }
+
+        return scalar.anyIntersects(edges, i, to, ax, ay, bx, by);
+    }
+}